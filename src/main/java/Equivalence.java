@@ -0,0 +1,115 @@
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Стратегия сравнения ключей для {@link MyHashMap}. Позволяет заменить
+ * {@code equals} и {@code hashCode} ключа, например, сравнением по ссылке
+ * или сравнением массивов по содержимому без объектов-оберток.
+ *
+ * Методы никогда не вызываются с {@code null}: ключ {@code null} карта
+ * обрабатывает сама, сравнивая его по ссылке и считая его хэш равным 0.
+ * Если в карту передается ключ другого типа, то пользовательская стратегия
+ * может выбросить {@link ClassCastException}.
+ *
+ * @param <T> тип сравниваемых объектов
+ */
+public interface Equivalence<T> {
+
+    /**
+     * Возвращает {@code true}, если объекты считаются одним и тем же ключом.
+     * Вызывается только если {@code a != b}.
+     * @param a первый объект, не {@code null}
+     * @param b второй объект, не {@code null}
+     * @return {@code true}, если объекты эквивалентны
+     */
+    boolean equivalent(T a, T b);
+
+    /**
+     * Возвращает хэш объекта, согласованный с {@link #equivalent}.
+     * @param t объект, не {@code null}
+     * @return хэш объекта
+     */
+    int hash(T t);
+
+    /**
+     * Сравнение по ссылке: ключи равны, только если это один и тот же объект,
+     * хэш берется из {@link System#identityHashCode(Object)}.
+     * @return стратегия сравнения по ссылке
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Equivalence<T> identity() {
+        return (Equivalence<T>) Identity.INSTANCE;
+    }
+
+    /**
+     * Сравнение через {@code equals} и {@code hashCode}.
+     * @return стратегия сравнения через {@code equals}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Equivalence<T> equality() {
+        return (Equivalence<T>) Equality.INSTANCE;
+    }
+
+    /**
+     * Сравнение массивов (в том числе массивов примитивов и вложенных массивов)
+     * по содержимому. Объекты, не являющиеся массивами, сравниваются через {@code equals}.
+     * @return стратегия сравнения массивов по содержимому
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Equivalence<T> arrays() {
+        return (Equivalence<T>) ArrayContent.INSTANCE;
+    }
+
+    /**
+     * Создает стратегию из функции сравнения и функции хэша.
+     * @param equivalent функция сравнения
+     * @param hash функция хэша, согласованная с функцией сравнения
+     * @return стратегия сравнения
+     */
+    static <T> Equivalence<T> of(BiPredicate<? super T, ? super T> equivalent,
+                                 ToIntFunction<? super T> hash) {
+        Objects.requireNonNull(equivalent);
+        Objects.requireNonNull(hash);
+        return new Equivalence<>() {
+            public boolean equivalent(T a, T b) { return equivalent.test(a, b); }
+            public int hash(T t) { return hash.applyAsInt(t); }
+        };
+    }
+
+    final class Identity implements Equivalence<Object> {
+        static final Identity INSTANCE = new Identity();
+
+        public boolean equivalent(Object a, Object b) { return false; }
+
+        public int hash(Object o) { return System.identityHashCode(o); }
+    }
+
+    final class Equality implements Equivalence<Object> {
+        static final Equality INSTANCE = new Equality();
+
+        public boolean equivalent(Object a, Object b) { return a.equals(b); }
+
+        public int hash(Object o) { return o.hashCode(); }
+    }
+
+    final class ArrayContent implements Equivalence<Object> {
+        static final ArrayContent INSTANCE = new ArrayContent();
+
+        public boolean equivalent(Object a, Object b) { return Objects.deepEquals(a, b); }
+
+        public int hash(Object o) {
+            if (o instanceof Object[] a) return Arrays.deepHashCode(a);
+            if (o instanceof int[] a) return Arrays.hashCode(a);
+            if (o instanceof long[] a) return Arrays.hashCode(a);
+            if (o instanceof byte[] a) return Arrays.hashCode(a);
+            if (o instanceof char[] a) return Arrays.hashCode(a);
+            if (o instanceof short[] a) return Arrays.hashCode(a);
+            if (o instanceof double[] a) return Arrays.hashCode(a);
+            if (o instanceof float[] a) return Arrays.hashCode(a);
+            if (o instanceof boolean[] a) return Arrays.hashCode(a);
+            return o.hashCode();
+        }
+    }
+}
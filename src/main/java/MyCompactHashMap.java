@@ -0,0 +1,375 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+
+/**
+ * Хэш таблица, которая начинает работу в компактном представлении:
+ * пока в ней не больше {@link #INLINE_CAPACITY} элементов, ключи и значения
+ * хранятся поочередно в одном массиве {@code Object[]} и ищутся линейным
+ * проходом, без таблицы и без узлов. При превышении этого порога все элементы
+ * переносятся в обычную таблицу {@link MyHashMap}, и дальше карта работает
+ * как обычная хэш таблица. Обратно в компактное представление карта не возвращается.
+ *
+ * Для маленьких карт это экономит память на каждом элементе: нет заголовка
+ * объекта {@code Node}, полей {@code hash} и {@code next}, а также самой таблицы.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MyCompactHashMap<K, V> extends MyHashMap<K, V> {
+
+    static final int INLINE_CAPACITY = 8;
+    static final int INITIAL_INLINE_CAPACITY = 2;
+
+    private Object[] inline;
+    private int inlineSize;
+    private boolean inflated;
+
+    /**
+     * @param capacity емкость таблицы после выхода из компактного представления
+     *                 (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     */
+    public MyCompactHashMap(int capacity, float loadFactor) {
+        super(capacity, loadFactor);
+    }
+
+    /**
+     * @param capacity емкость таблицы после выхода из компактного представления
+     *                 (доводится до степени двойки)
+     */
+    public MyCompactHashMap(int capacity) {
+        super(capacity);
+    }
+
+    public MyCompactHashMap() {
+        super();
+    }
+
+    public int size() {
+        return inflated ? super.size() : inlineSize;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public V get(Object key) {
+        if (inflated)
+            return super.get(key);
+        int i = indexOf(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    public boolean containsKey(Object key) {
+        return inflated ? super.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        if (inflated)
+            return super.containsValue(value);
+        Object[] a = inline; Object v;
+        for (int i = 1; i < inlineSize << 1; i += 2) {
+            if ((v = a[i]) == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * В компактном представлении заменяет значение существующего ключа
+     * или дописывает пару в конец массива. Если массив уже содержит
+     * {@link #INLINE_CAPACITY} элементов, то карта переходит в табличное
+     * представление.
+     */
+    public V put(K key, V value) {
+        if (inflated)
+            return super.put(key, value);
+        int i;
+        if ((i = indexOf(key)) >= 0) {
+            V oldValue = valueAt(i);
+            inline[i + 1] = value;
+            return oldValue;
+        }
+        if (inlineSize >= INLINE_CAPACITY) {
+            inflate();
+            return super.put(key, value);
+        }
+        Object[] a;
+        if ((a = inline) == null)
+            a = inline = new Object[INITIAL_INLINE_CAPACITY << 1];
+        else if (inlineSize << 1 == a.length)
+            a = inline = Arrays.copyOf(a, a.length << 1);
+        a[inlineSize << 1] = key;
+        a[(inlineSize << 1) + 1] = value;
+        ++inlineSize;
+        return null;
+    }
+
+    /**
+     * В компактном представлении переносит последнюю пару на место удаляемой,
+     * поэтому порядок обхода после удаления может измениться.
+     */
+    public V remove(Object key) {
+        if (inflated)
+            return super.remove(key);
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return null;
+        V oldValue = valueAt(i);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Если все отображения из {@code m} не помещаются в компактное представление,
+     * то карта заранее переходит в табличное, и таблица подбирается под итоговый размер.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (!inflated && inlineSize + m.size() > INLINE_CAPACITY)
+            inflate();
+        if (inflated) {
+            super.putAll(m);
+            return;
+        }
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    public void clear() {
+        if (inflated) {
+            super.clear();
+            return;
+        }
+        if (inline != null)
+            Arrays.fill(inline, 0, inlineSize << 1, null);
+        inlineSize = 0;
+    }
+
+    /**
+     * В компактном представлении пар не больше {@link #INLINE_CAPACITY},
+     * поэтому они проверяются сразу, без разбиения на порции.
+     */
+    public CompletableFuture<List<Map.Entry<K,V>>> scanAsync(BiPredicate<? super K, ? super V> predicate,
+                                                            Executor executor) {
+        if (inflated)
+            return super.scanAsync(predicate, executor);
+        List<Map.Entry<K,V>> found = new ArrayList<>();
+        try {
+            for (int i = 0; i < inlineSize << 1; i += 2) {
+                if (predicate.test(keyAt(i), valueAt(i)))
+                    found.add(new AbstractMap.SimpleImmutableEntry<>(keyAt(i), valueAt(i)));
+            }
+        } catch (Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+        return CompletableFuture.completedFuture(found);
+    }
+
+    /**
+     * Возвращает индекс ключа в массиве {@code inline} или -1, если ключа нет.
+     */
+    private int indexOf(Object key) {
+        Object[] a = inline; Object k;
+        for (int i = 0; i < inlineSize << 1; i += 2) {
+            if ((k = a[i]) == key || (key != null && key.equals(k)))
+                return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int i) {
+        return (K) inline[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return (V) inline[i + 1];
+    }
+
+    private void removeAt(int i) {
+        Object[] a = inline;
+        int last = (--inlineSize) << 1;
+        a[i] = a[last];
+        a[i + 1] = a[last + 1];
+        a[last] = null;
+        a[last + 1] = null;
+    }
+
+    /**
+     * Переносит все пары из массива в таблицу. Таблица создается с учетом
+     * начальной емкости, заданной в конструкторе.
+     */
+    private void inflate() {
+        Object[] a = inline;
+        int n = inlineSize << 1;
+        inline = null;
+        inlineSize = 0;
+        inflated = true;
+        for (int i = 0; i < n; i += 2) {
+            @SuppressWarnings("unchecked") K key = (K) a[i];
+            @SuppressWarnings("unchecked") V value = (V) a[i + 1];
+            putVal(hashOf(key), key, value);
+        }
+    }
+
+    boolean isInflated() {
+        return inflated;
+    }
+
+    abstract class InlineIterator {
+        int cursor;
+        int lastReturned = -1;
+
+        public boolean hasNext() {
+            return cursor < inlineSize << 1;
+        }
+
+        final int nextIndex() {
+            if (inflated || cursor >= inlineSize << 1)
+                throw new NoSuchElementException();
+            lastReturned = cursor;
+            cursor += 2;
+            return lastReturned;
+        }
+
+        public void remove() {
+            if (lastReturned < 0)
+                throw new IllegalStateException();
+            removeAt(lastReturned);
+            cursor = lastReturned;
+            lastReturned = -1;
+        }
+    }
+
+    final class InlineEntryIterator extends InlineIterator
+            implements Iterator<Map.Entry<K,V>> {
+        public Map.Entry<K,V> next() {
+            int i = nextIndex();
+            return new InlineEntry(keyAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * Элемент компактного представления. Запись значения через {@code setValue}
+     * попадает в текущий слот ключа, в массиве или, после перехода в табличное
+     * представление, в узле таблицы. Если ключ уже удален из карты, то
+     * {@code setValue} бросает {@link IllegalStateException} и ключ обратно
+     * не добавляет.
+     */
+    final class InlineEntry extends AbstractMap.SimpleEntry<K,V> {
+        InlineEntry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            K key = getKey();
+            V oldValue;
+            if (inflated) {
+                Node<K,V> e;
+                if ((e = getNode(key)) == null)
+                    throw new IllegalStateException("Entry was removed from the map");
+                oldValue = e.value;
+                e.value = value;
+            }
+            else {
+                int i;
+                if ((i = indexOf(key)) < 0)
+                    throw new IllegalStateException("Entry was removed from the map");
+                oldValue = valueAt(i);
+                inline[i + 1] = value;
+            }
+            super.setValue(value);
+            return oldValue;
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new CompactEntrySet()) : es;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new CompactKeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new CompactValues()) : vs;
+    }
+
+    /**
+     * Возвращает итератор по элементам, соответствующий текущему представлению карты.
+     */
+    Iterator<Map.Entry<K,V>> entryIterator() {
+        return inflated ? new EntryIterator() : new InlineEntryIterator();
+    }
+
+    final class CompactEntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() { return MyCompactHashMap.this.size(); }
+
+        public void clear() { MyCompactHashMap.this.clear(); }
+
+        public Iterator<Map.Entry<K,V>> iterator() { return entryIterator(); }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MyCompactHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    final class CompactKeySet extends AbstractSet<K> {
+        public int size() { return MyCompactHashMap.this.size(); }
+
+        public void clear() { MyCompactHashMap.this.clear(); }
+
+        public Iterator<K> iterator() {
+            Iterator<Map.Entry<K,V>> it = entryIterator();
+            return new Iterator<>() {
+                public boolean hasNext() { return it.hasNext(); }
+                public K next() { return it.next().getKey(); }
+                public void remove() { it.remove(); }
+            };
+        }
+
+        public boolean contains(Object o) { return containsKey(o); }
+
+        public boolean remove(Object key) {
+            if (containsKey(key)) {
+                MyCompactHashMap.this.remove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    final class CompactValues extends AbstractCollection<V> {
+        public int size() { return MyCompactHashMap.this.size(); }
+
+        public void clear() { MyCompactHashMap.this.clear(); }
+
+        public Iterator<V> iterator() {
+            Iterator<Map.Entry<K,V>> it = entryIterator();
+            return new Iterator<>() {
+                public boolean hasNext() { return it.hasNext(); }
+                public V next() { return it.next().getValue(); }
+                public void remove() { it.remove(); }
+            };
+        }
+
+        public boolean contains(Object o) { return containsValue(o); }
+    }
+}
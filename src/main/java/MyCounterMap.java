@@ -0,0 +1,328 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Потокобезопасная карта счетчиков: ключи любого типа {@code K}, значение
+ * каждого ключа - примитивный счетчик {@code long}.
+ *
+ * Ключи разложены по сегментам по старшим битам хэша, каждый сегмент -
+ * {@link MySingleWriterHashMap} со структурой {@link MyHashMap}. Поиск
+ * счетчика не берет блокировок, блокировка сегмента нужна только для
+ * вставки нового ключа.
+ *
+ * Счетчик устроен как {@link java.util.concurrent.atomic.LongAdder}: пока
+ * нет конкуренции, значение меняется через CAS одного поля, после первой
+ * неудачной попытки у счетчика появляются ячейки, разнесенные по разным
+ * строкам кэша, и поток прибавляет в ячейку, выбранную по своей пробе.
+ * Значение хранится в примитивных полях и не упаковывается в объект при каждом
+ * увеличении, а ячейки появляются и множатся (но не больше числа процессоров)
+ * только там, где конкуренция продолжается, поэтому горячий ключ не становится
+ * точкой конкуренции, а редко изменяемые ключи не занимают лишней памяти.
+ *
+ * @param <K> тип ключей
+ */
+public class MyCounterMap<K> {
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private final Segment<K>[] segments;
+    private final int segmentShift;
+
+    /**
+     * @param capacity ожидаемое количество ключей
+     */
+    @SuppressWarnings("unchecked")
+    public MyCounterMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        int n = MyHashMap.tableSizeFor(NCPU << 2);
+        segments = (Segment<K>[]) new Segment[n];
+        int perSegment = MyHashOperators.capacityFor(capacity / n);
+        for (int i = 0; i < n; ++i)
+            segments[i] = new Segment<>(perSegment);
+        segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+    }
+
+    public MyCounterMap() {
+        this(MyHashMap.INITIAL_CAPACITY);
+    }
+
+    static final class Segment<K> extends MySingleWriterHashMap<K, Counter> {
+        Segment(int capacity) {
+            super(capacity);
+        }
+    }
+
+    /**
+     * Счетчик одного ключа, устроенный как {@code Striped64}: ячейки создаются
+     * только после неудачного CAS поля {@code base}, массив ячеек начинается
+     * с двух и удваивается при повторных столкновениях, пока не достигнет
+     * {@link #CELL_COUNT}, а сами ячейки создаются при первом обращении к ним.
+     * Поток выбирает ячейку по своей пробе и меняет пробу после каждого
+     * неудачного CAS, поэтому потоки, попавшие в одну ячейку, расходятся.
+     */
+    static final class Counter {
+        private static final VarHandle BASE;
+        private static final VarHandle BUSY;
+
+        static {
+            try {
+                MethodHandles.Lookup l = MethodHandles.lookup();
+                BASE = l.findVarHandle(Counter.class, "base", long.class);
+                BUSY = l.findVarHandle(Counter.class, "busy", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /** наибольшее количество ячеек */
+        static final int CELL_COUNT = MyHashMap.tableSizeFor(NCPU);
+
+        private static final AtomicInteger PROBE_SEED = new AtomicInteger();
+        /** проба потока, никогда не равна нулю */
+        private static final ThreadLocal<int[]> PROBE =
+                ThreadLocal.withInitial(() -> new int[]{PROBE_SEED.addAndGet(0x9E3779B9) | 1});
+
+        volatile long base;
+        volatile Cell[] cells;
+        /** спин-блокировка для создания ячеек и расширения массива */
+        volatile int busy;
+
+        void add(long x) {
+            Cell[] cs; Cell c; long b, v; int n;
+            if ((cs = cells) == null && BASE.compareAndSet(this, b = base, b + x))
+                return;
+            boolean uncontended = true;
+            if (cs == null || (n = cs.length) == 0
+                    || (c = cs[probe() & (n - 1)]) == null
+                    || !(uncontended = c.cas(v = c.value, v + x)))
+                addSlow(x, uncontended);
+        }
+
+        private void addSlow(long x, boolean uncontended) {
+            int[] probe = PROBE.get();
+            int h = probe[0];
+            boolean collide = false;
+            for (;;) {
+                Cell[] cs; Cell c; int n; long v;
+                if ((cs = cells) != null && (n = cs.length) > 0) {
+                    if ((c = cs[h & (n - 1)]) == null) {
+                        if (busy == 0 && BUSY.compareAndSet(this, 0, 1)) {
+                            try {
+                                Cell[] rs; int m, j;
+                                if ((rs = cells) != null && (m = rs.length) > 0
+                                        && rs[j = h & (m - 1)] == null) {
+                                    rs[j] = new Cell(x);
+                                    return;
+                                }
+                            } finally {
+                                busy = 0;
+                            }
+                            continue;
+                        }
+                        collide = false;
+                    }
+                    else if (!uncontended)
+                        uncontended = true;
+                    else if (c.cas(v = c.value, v + x))
+                        return;
+                    else if (n >= CELL_COUNT || cells != cs)
+                        collide = false;
+                    else if (!collide)
+                        collide = true;
+                    else if (busy == 0 && BUSY.compareAndSet(this, 0, 1)) {
+                        try {
+                            if (cells == cs)
+                                cells = Arrays.copyOf(cs, n << 1);
+                        } finally {
+                            busy = 0;
+                        }
+                        collide = false;
+                        continue;
+                    }
+                    h = rehash(probe);
+                }
+                else if (busy == 0 && cells == cs && BUSY.compareAndSet(this, 0, 1)) {
+                    try {
+                        if (cells == cs) {
+                            Cell[] rs = new Cell[2];
+                            rs[h & 1] = new Cell(x);
+                            cells = rs;
+                            return;
+                        }
+                    } finally {
+                        busy = 0;
+                    }
+                }
+                else if (BASE.compareAndSet(this, v = base, v + x))
+                    return;
+            }
+        }
+
+        private static int probe() {
+            return PROBE.get()[0];
+        }
+
+        /**
+         * Сдвигает пробу потока генератором xorshift.
+         */
+        private static int rehash(int[] probe) {
+            int h = probe[0];
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            return probe[0] = h;
+        }
+
+        long sum() {
+            long s = base;
+            Cell[] cs = cells;
+            if (cs != null) {
+                for (Cell c : cs) {
+                    if (c != null)
+                        s += c.value;
+                }
+            }
+            return s;
+        }
+
+        int cellCount() {
+            Cell[] cs = cells;
+            return cs == null ? 0 : cs.length;
+        }
+    }
+
+    /**
+     * Ячейка счетчика. Поля {@code p*} отодвигают значение от соседних
+     * объектов, чтобы ячейки разных потоков не делили строку кэша.
+     */
+    static final class Cell {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Cell.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long p0, p1, p2, p3, p4, p5, p6;
+        volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        Cell(long x) {
+            value = x;
+        }
+
+        boolean cas(long expected, long x) {
+            return VALUE.compareAndSet(this, expected, x);
+        }
+    }
+
+    private Segment<K> segmentFor(int hash) {
+        return segments[(hash * 0x9E3779B9) >>> segmentShift];
+    }
+
+    private Counter counter(K key) {
+        Segment<K> seg = segmentFor(MyHashMap.hash(key));
+        Counter c;
+        if ((c = seg.get(key)) == null) {
+            synchronized (seg) {
+                if ((c = seg.get(key)) == null)
+                    seg.put(key, c = new Counter());
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Увеличивает счетчик ключа на единицу.
+     * @param key ключ
+     */
+    public void increment(K key) {
+        counter(key).add(1L);
+    }
+
+    /**
+     * Прибавляет {@code delta} к счетчику ключа. Если ключа нет, он добавляется
+     * со счетчиком {@code delta}.
+     *
+     * @param key ключ
+     * @param delta приращение
+     */
+    public void add(K key, long delta) {
+        counter(key).add(delta);
+    }
+
+    /**
+     * Возвращает значение счетчика ключа. Во время конкурентных изменений
+     * это не мгновенный снимок, как у {@link java.util.concurrent.atomic.LongAdder#sum()}.
+     *
+     * @param key ключ
+     * @return значение счетчика или 0, если ключа нет
+     */
+    public long get(Object key) {
+        Counter c = segmentFor(MyHashMap.hash(key)).get(key);
+        return c == null ? 0L : c.sum();
+    }
+
+    public boolean containsKey(Object key) {
+        return segmentFor(MyHashMap.hash(key)).containsKey(key);
+    }
+
+    /**
+     * Возвращает количество ключей.
+     * @return количество ключей
+     */
+    public int size() {
+        int n = 0;
+        for (Segment<K> seg : segments)
+            n += seg.size();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Возвращает сумму счетчиков по всем ключам.
+     * @return сумма счетчиков
+     */
+    public long sum() {
+        long[] s = new long[1];
+        forEach((k, v) -> s[0] += v);
+        return s[0];
+    }
+
+    /**
+     * Выполняет действие для каждого ключа и значения его счетчика.
+     * Сегмент блокируется на время обхода, поэтому вставка новых ключей
+     * в него ждет, а увеличение существующих счетчиков - нет.
+     *
+     * @param action действие
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super K> action) {
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                MySingleWriterHashMap.SwNode<K, Counter>[] tab;
+                if ((tab = seg.getTable()) == null)
+                    continue;
+                for (MySingleWriterHashMap.SwNode<K, Counter> e : tab) {
+                    for (; e != null; e = e.next)
+                        action.accept(e.key, e.value.sum());
+                }
+            }
+        }
+    }
+
+    Segment<K>[] getSegments() {
+        return segments;
+    }
+}
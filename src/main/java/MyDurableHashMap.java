@@ -0,0 +1,509 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * {@link MyHashMap}, состояние которой переживает падение процесса.
+ *
+ * Каждая операция {@code put}/{@code remove}/{@code clear} записывается в журнал
+ * упреждающей записи ({@code wal-<поколение>.log}). Записи накапливаются в памяти
+ * и сбрасываются в файл пачкой: одна запись на диск и один вызов
+ * {@link FileChannel#force(boolean)} на пачку из {@code batchSize} операций
+ * или на явный вызов {@link #commit()}. Операции из незафиксированной пачки
+ * при падении теряются.
+ *
+ * Каждая пачка записывается как длина, CRC32 и данные, поэтому недописанный
+ * хвост журнала после падения обнаруживается и отбрасывается.
+ *
+ * Операция сначала записывается в пачку и только потом применяется к карте,
+ * поэтому исключение сериализатора не оставляет в пачке недописанную запись
+ * и не изменяет карту. Если же исключение бросает запись пачки на диск,
+ * то операция уже применена к карте и остается в пачке: журнал обрезается до
+ * начала недописанного кадра, и следующий {@link #commit()} запишет пачку снова.
+ * До успешного {@code commit()} такая операция не надежна, хотя уже видна в карте.
+ *
+ * Когда журнал превышает {@code compactionBytes}, запись переключается на журнал
+ * следующего поколения, а снимок карты ({@code snapshot-<поколение>.bin},
+ * формат {@link MyHashMapCodec}) пишется в фоновом потоке. Карта при этом не
+ * копируется: на время записи снимка она замораживается, а изменения копятся
+ * в отдельной карте поверх нее (удаление хранится как отметка, очистка - как
+ * флаг). Когда снимок записан, изменения переносятся в основную карту при
+ * следующей операции, это занимает время, пропорциональное числу изменений за
+ * время компактизации, а не размеру карты. После записи снимка старые журналы
+ * и снимки удаляются. При открытии загружается последний снимок и
+ * воспроизводятся журналы, начиная с его поколения.
+ *
+ * Как и {@link MyHashMap}, класс не потокобезопасен.
+ *
+ * @param <K> тип ключей
+ * @param <V> тип значений
+ */
+public class MyDurableHashMap<K, V> implements AutoCloseable {
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    static final byte CLEAR = 3;
+
+    static final int DEFAULT_BATCH_SIZE = 256;
+    static final long DEFAULT_COMPACTION_BYTES = 64L << 20;
+
+    static final int FRAME_HEADER = 8;
+
+    private static final Object TOMBSTONE = new Object();
+    private static final Object ABSENT = new Object();
+
+    private static final Pattern FILE_NAME = Pattern.compile("(wal|snapshot)-(\\d+)\\.(log|bin|tmp)");
+
+    private final Path dir;
+    private final MyHashMapCodec<K, V> codec;
+    private final int batchSize;
+    private final long compactionBytes;
+    /** основная карта; пока пишется снимок, она не изменяется */
+    private final MyHashMap<K, V> map;
+    /** изменения поверх {@code map} на время записи снимка или {@code null} */
+    private MyHashMap<K, Object> overlay;
+    /** во время записи снимка была очистка, и {@code map} не видна */
+    private boolean mapCleared;
+    private int size;
+
+    private final BatchBuffer batchBytes = new BatchBuffer();
+    private final DataOutputStream batch = new DataOutputStream(batchBytes);
+    private int batchCount;
+
+    private FileChannel log;
+    private long generation;
+    private final ExecutorService compactor;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    /**
+     * Открывает карту в каталоге {@code dir} с размером пачки и порогом
+     * компактизации по умолчанию.
+     *
+     * @param dir каталог для журнала и снимков
+     * @param keySerializer сериализатор ключей
+     * @param valueSerializer сериализатор значений
+     * @throws IOException при ошибке чтения каталога
+     */
+    public MyDurableHashMap(Path dir, MyHashMapCodec.Serializer<K> keySerializer,
+                            MyHashMapCodec.Serializer<V> valueSerializer) throws IOException {
+        this(dir, keySerializer, valueSerializer, DEFAULT_BATCH_SIZE, DEFAULT_COMPACTION_BYTES);
+    }
+
+    /**
+     * Открывает карту в каталоге {@code dir}, восстанавливая состояние
+     * из последнего снимка и журналов.
+     *
+     * @param dir каталог для журнала и снимков
+     * @param keySerializer сериализатор ключей
+     * @param valueSerializer сериализатор значений
+     * @param batchSize количество операций в пачке
+     * @param compactionBytes размер журнала, после которого запускается компактизация
+     * @throws IOException при ошибке чтения каталога
+     */
+    public MyDurableHashMap(Path dir, MyHashMapCodec.Serializer<K> keySerializer,
+                            MyHashMapCodec.Serializer<V> valueSerializer,
+                            int batchSize, long compactionBytes) throws IOException {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize <= 0");
+        if (compactionBytes <= 0)
+            throw new IllegalArgumentException("compactionBytes <= 0");
+        this.dir = Objects.requireNonNull(dir);
+        this.codec = new MyHashMapCodec<>(keySerializer, valueSerializer);
+        this.batchSize = batchSize;
+        this.compactionBytes = compactionBytes;
+        Files.createDirectories(dir);
+        this.map = recover();
+        this.size = map.size();
+        this.log = openLog(generation);
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "MyDurableHashMap-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v;
+        return (v = lookup(key)) == ABSENT ? null : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        return lookup(key) != ABSENT;
+    }
+
+    /**
+     * Возвращает значение ключа с учетом изменений поверх замороженной карты
+     * или {@code ABSENT}.
+     */
+    private Object lookup(Object key) {
+        Node<K, ?> e;
+        if (overlay != null) {
+            if ((e = overlay.getNode(key)) != null)
+                return e.value == TOMBSTONE ? ABSENT : e.value;
+            if (mapCleared)
+                return ABSENT;
+        }
+        return (e = map.getNode(key)) == null ? ABSENT : e.value;
+    }
+
+    /**
+     * Если снимок уже записан, переносит накопленные изменения в основную карту.
+     */
+    @SuppressWarnings("unchecked")
+    private void mergeOverlay() {
+        MyHashMap<K, Object> o;
+        if ((o = overlay) == null || !compaction.isDone())
+            return;
+        if (mapCleared)
+            map.clear();
+        for (Map.Entry<K, Object> e : o.entrySet()) {
+            if (e.getValue() == TOMBSTONE)
+                map.remove(e.getKey());
+            else
+                map.put(e.getKey(), (V) e.getValue());
+        }
+        overlay = null;
+        mapCleared = false;
+    }
+
+    /**
+     * Связывает значение с ключом и добавляет операцию в текущую пачку.
+     *
+     * @param key ключ
+     * @param value значение
+     * @return предыдущее значение или {@code null}
+     * @throws UncheckedIOException при ошибке записи журнала
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        mergeOverlay();
+        int mark = batchBytes.size();
+        try {
+            batch.writeByte(PUT);
+            codec.writeEntry(batch, key, value);
+        } catch (IOException | RuntimeException e) {
+            batchBytes.truncate(mark);
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+        V oldValue;
+        if (overlay == null) {
+            oldValue = map.put(key, value);
+            size = map.size();
+        }
+        else {
+            Object prev = lookup(key);
+            overlay.put(key, value);
+            if (prev == ABSENT) {
+                ++size;
+                oldValue = null;
+            }
+            else {
+                oldValue = (V) prev;
+            }
+        }
+        afterAppend();
+        return oldValue;
+    }
+
+    /**
+     * Удаляет ключ. В журнал операция попадает, только если ключ был в карте.
+     *
+     * @param key ключ
+     * @return предыдущее значение или {@code null}
+     * @throws UncheckedIOException при ошибке записи журнала
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        mergeOverlay();
+        Object prev;
+        if ((prev = lookup(key)) == ABSENT)
+            return null;
+        int mark = batchBytes.size();
+        try {
+            batch.writeByte(REMOVE);
+            codec.writeEntry(batch, (K) key, null);
+        } catch (IOException | RuntimeException ex) {
+            batchBytes.truncate(mark);
+            throw ex instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) ex;
+        }
+        if (overlay == null)
+            map.remove(key);
+        else
+            overlay.put((K) key, TOMBSTONE);
+        --size;
+        afterAppend();
+        return (V) prev;
+    }
+
+    /**
+     * Удаляет все элементы.
+     *
+     * @throws UncheckedIOException при ошибке записи журнала
+     */
+    public void clear() {
+        mergeOverlay();
+        try {
+            batch.writeByte(CLEAR);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (overlay == null) {
+            map.clear();
+        }
+        else {
+            overlay.clear();
+            mapCleared = true;
+        }
+        size = 0;
+        afterAppend();
+    }
+
+    private void afterAppend() {
+        if (++batchCount >= batchSize) {
+            try {
+                commit();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Записывает накопленную пачку операций в журнал одним кадром и вызывает
+     * {@link FileChannel#force(boolean)}. Если журнал превысил порог,
+     * запускает компактизацию. При ошибке журнал обрезается до начала кадра,
+     * а пачка остается, чтобы следующий вызов записал ее снова.
+     *
+     * @throws IOException при ошибке записи
+     */
+    public void commit() throws IOException {
+        if (batchCount == 0)
+            return;
+        byte[] payload = batchBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long start = log.position();
+        try {
+            while (buf.hasRemaining())
+                log.write(buf);
+            log.force(false);
+        } catch (IOException e) {
+            try {
+                log.truncate(start);
+                log.position(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        batchBytes.reset();
+        batchCount = 0;
+        if (log.size() >= compactionBytes && compaction.isDone())
+            compact();
+    }
+
+    /**
+     * Фиксирует текущую пачку, переключает запись на журнал следующего поколения,
+     * замораживает карту и в фоновом потоке записывает ее снимок. Если предыдущий
+     * снимок еще пишется, то сначала дожидается его. Старые журналы удаляются
+     * только после того, как снимок записан целиком.
+     *
+     * @return завершается, когда снимок записан и старые файлы удалены
+     * @throws IOException при ошибке записи журнала
+     */
+    public CompletableFuture<Void> compact() throws IOException {
+        commit();
+        compaction.exceptionally(e -> null).join();
+        mergeOverlay();
+        MyHashMap<K, V> frozen = map;
+        overlay = new MyHashMap<>();
+        long snapshotGeneration = ++generation;
+        log.close();
+        log = openLog(snapshotGeneration);
+        return compaction = CompletableFuture.runAsync(() -> {
+            try {
+                writeSnapshot(frozen, snapshotGeneration);
+                deleteBefore(snapshotGeneration);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, compactor);
+    }
+
+    /**
+     * Фиксирует текущую пачку, дожидается фоновой компактизации и закрывает журнал.
+     *
+     * @throws IOException при ошибке записи журнала или снимка
+     */
+    public void close() throws IOException {
+        try {
+            commit();
+            try {
+                compaction.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException u)
+                    throw u.getCause();
+                if (cause instanceof RuntimeException r)
+                    throw r;
+                if (cause instanceof Error err)
+                    throw err;
+                throw e;
+            }
+        } finally {
+            compactor.shutdown();
+            log.close();
+        }
+    }
+
+    private void writeSnapshot(MyHashMap<K, V> frozen, long gen) throws IOException {
+        Path tmp = dir.resolve("snapshot-" + gen + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            codec.write(frozen, ch);
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve("snapshot-" + gen + ".bin"),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteBefore(long gen) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && Long.parseLong(m.group(2)) < gen)
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private FileChannel openLog(long gen) throws IOException {
+        FileChannel ch = FileChannel.open(dir.resolve("wal-" + gen + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        return ch;
+    }
+
+    /**
+     * Загружает последний снимок и воспроизводит журналы начиная с его поколения.
+     * Недописанный или поврежденный хвост журнала обрезается.
+     */
+    private MyHashMap<K, V> recover() throws IOException {
+        long snapshotGen = -1;
+        List<Long> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (!m.matches())
+                    continue;
+                long gen = Long.parseLong(m.group(2));
+                if (m.group(3).equals("bin"))
+                    snapshotGen = Math.max(snapshotGen, gen);
+                else if (m.group(3).equals("log"))
+                    logs.add(gen);
+                else
+                    Files.deleteIfExists(file);
+            }
+        }
+        MyHashMap<K, V> recovered;
+        if (snapshotGen >= 0) {
+            try (FileChannel ch = FileChannel.open(dir.resolve("snapshot-" + snapshotGen + ".bin"))) {
+                recovered = codec.read(ch);
+            }
+        }
+        else {
+            recovered = new MyHashMap<>();
+        }
+        logs.sort(null);
+        generation = Math.max(snapshotGen, 0);
+        for (long gen : logs) {
+            if (gen < snapshotGen)
+                continue;
+            replay(dir.resolve("wal-" + gen + ".log"), recovered);
+            generation = gen;
+        }
+        if (snapshotGen > 0)
+            deleteBefore(snapshotGen);
+        return recovered;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(Path file, MyHashMap<K, V> target) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size(), pos = 0;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            while (pos + FRAME_HEADER <= size) {
+                header.clear();
+                ch.read(header, pos);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || pos + FRAME_HEADER + length > size)
+                    break;
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                while (payload.hasRemaining() &&
+                        ch.read(payload, pos + FRAME_HEADER + payload.position()) > 0);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum)
+                    break;
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+                while (in.available() > 0) {
+                    byte op = in.readByte();
+                    if (op == CLEAR) {
+                        target.clear();
+                        continue;
+                    }
+                    int flags = in.readUnsignedByte();
+                    K key = (flags & MyHashMapCodec.NULL_KEY) != 0 ? null : codec.keySerializer.read(in);
+                    V value = (flags & MyHashMapCodec.NULL_VALUE) != 0 ? null : codec.valueSerializer.read(in);
+                    if (op == PUT)
+                        target.put(key, value);
+                    else if (op == REMOVE)
+                        target.remove(key);
+                    else
+                        throw new StreamCorruptedException("Unknown log operation: " + op);
+                }
+                pos += FRAME_HEADER + length;
+            }
+            if (pos < size)
+                ch.truncate(pos);
+        }
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Буфер пачки, из которого можно убрать недописанную запись.
+     */
+    static final class BatchBuffer extends ByteArrayOutputStream {
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
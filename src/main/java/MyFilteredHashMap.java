@@ -0,0 +1,219 @@
+/**
+ * Хэш таблица с фильтром Блума перед таблицей. {@link #get(Object)} и
+ * {@link #containsKey(Object)} сначала проверяют фильтр, и если ключа там
+ * точно нет, то возвращают результат, не обращаясь к таблице и не проходя
+ * по цепочке. Это выгодно, когда большая часть поисков - промахи.
+ *
+ * Фильтр блочный: каждый ключ устанавливает {@link #BITS_PER_KEY_SET} бита в
+ * одном 64-битном слове, поэтому проверка читает одно слово. Размер фильтра -
+ * {@link #BITS_PER_ENTRY} бит на каждый элемент до {@code threshold}, фильтр
+ * перестраивается при каждом расширении таблицы. Удаленные ключи остаются
+ * в фильтре, пока их не станет больше половины {@code threshold}, после
+ * чего фильтр строится заново по таблице.
+ *
+ * Как и таблица, фильтр очищается лениво: запоминаются слова, ставшие ненулевыми
+ * после последней очистки (не больше {@code filter.length >>> TOUCHED_SHIFT}),
+ * и {@link #clear()} обнуляет только их, а при переполнении списка - весь фильтр.
+ *
+ * {@link #rejectedLookups()} и {@link #falsePositives()} показывают, сколько
+ * промахов отсек фильтр и сколько пропустил.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MyFilteredHashMap<K, V> extends MyHashMap<K, V> {
+
+    static final int BITS_PER_ENTRY = 8;
+    static final int BITS_PER_KEY_SET = 3;
+
+    private long[] filter;
+    private int filterShift;
+    private int removedSinceBuild;
+    /**
+     * Слова фильтра, ставшие ненулевыми после последней очистки,
+     * {@code touchedWordCount < 0} означает, что список переполнен
+     */
+    private int[] touchedWords;
+    private int touchedWordCount;
+    private long rejected;
+    private long falsePositives;
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     */
+    public MyFilteredHashMap(int capacity, float loadFactor) {
+        super(capacity, loadFactor);
+    }
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     */
+    public MyFilteredHashMap(int capacity) {
+        super(capacity);
+    }
+
+    public MyFilteredHashMap() {
+        super();
+    }
+
+    /**
+     * Возвращает значение для ключа; если фильтр отвечает, что ключа нет,
+     * то таблица не просматривается.
+     */
+    @Override
+    public V get(Object key) {
+        Node<K, V> e;
+        return (e = filteredNode(key)) == null ? null : e.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return filteredNode(key) != null;
+    }
+
+    private Node<K, V> filteredNode(Object key) {
+        long[] f;
+        if ((f = filter) != null && !mightContain(f, hashOf(key))) {
+            ++rejected;
+            return null;
+        }
+        Node<K, V> e;
+        if ((e = getNode(key)) == null && f != null)
+            ++falsePositives;
+        return e;
+    }
+
+    /**
+     * Добавляет хэш вставляемого ключа в фильтр.
+     */
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        long[] f;
+        if ((f = filter) != null)
+            setBits(f, (hash * 0x9E3779B9) >>> filterShift, bitsFor(hash));
+        return super.newNode(hash, key, value, next);
+    }
+
+    /**
+     * Считает удаленные ключи и перестраивает фильтр, когда их накопилось
+     * больше половины {@code threshold}.
+     */
+    @Override
+    void afterNodeRemoval(Node<K, V> e) {
+        if (filter != null && ++removedSinceBuild > getThreshold() >>> 1) {
+            // getTable() возвращает сырой массив, но в таблице лежат только узлы этой карты
+            @SuppressWarnings("unchecked") Node<K, V>[] tab = (Node<K, V>[]) getTable();
+            rebuild(tab);
+        }
+    }
+
+    /**
+     * Строит фильтр под новый {@code threshold}.
+     */
+    @Override
+    void afterResize(Node<K, V>[] newTab) {
+        rebuild(newTab);
+    }
+
+    /**
+     * Обнуляет фильтр вместе с таблицей, даже если карта уже пуста:
+     * {@link #clearAsync} обнуляет размер раньше, чем вызывает этот метод.
+     * Обнуляются только запомненные слова, если список не переполнен.
+     */
+    @Override
+    public void clear() {
+        long[] f;
+        if ((f = filter) != null) {
+            int n = touchedWordCount;
+            if (n < 0) {
+                for (int i = 0; i < f.length; ++i)
+                    f[i] = 0L;
+            }
+            else {
+                int[] t = touchedWords;
+                for (int i = 0; i < n; ++i)
+                    f[t[i]] = 0L;
+            }
+            touchedWordCount = 0;
+            removedSinceBuild = 0;
+        }
+        super.clear();
+    }
+
+    /**
+     * Устанавливает биты в слове фильтра и запоминает слово, если оно было нулевым.
+     */
+    private void setBits(long[] f, int w, long bits) {
+        long old = f[w];
+        if (old == 0L && touchedWordCount >= 0) {
+            int[] t = touchedWords;
+            if (t == null || touchedWordCount >= t.length)
+                touchedWordCount = -1;
+            else
+                t[touchedWordCount++] = w;
+        }
+        f[w] = old | bits;
+    }
+
+    private void rebuild(Node<K, V>[] tab) {
+        // не меньше двух слов: при одном слове сдвиг был бы равен 32, а сдвиг int берется по модулю 32
+        int words = Math.max(2, MyHashMap.tableSizeFor(Math.max((int) Math.min(
+                (long) getThreshold() * BITS_PER_ENTRY / Long.SIZE, MAXIMUM_CAPACITY), 1)));
+        long[] f = (filter != null && filter.length == words) ? filter : new long[words];
+        for (int i = 0; i < f.length; ++i)
+            f[i] = 0L;
+        int limit = words >>> TOUCHED_SHIFT;
+        if (touchedWords == null || touchedWords.length != limit)
+            touchedWords = new int[limit];
+        touchedWordCount = 0;
+        int shift = 32 - Integer.numberOfTrailingZeros(words);
+        for (Node<K, V> e : tab) {
+            for (; e != null; e = e.next)
+                setBits(f, (e.hash * 0x9E3779B9) >>> shift, bitsFor(e.hash));
+        }
+        filter = f;
+        filterShift = shift;
+        removedSinceBuild = 0;
+    }
+
+    /**
+     * Маска из {@link #BITS_PER_KEY_SET} битов слова, выбранных по хэшу,
+     * независимо от битов, выбирающих слово.
+     */
+    static long bitsFor(int hash) {
+        int h = hash * 0x85EBCA6B;
+        h ^= h >>> 15;
+        return (1L << h) | (1L << (h >>> 6)) | (1L << (h >>> 12));
+    }
+
+    private boolean mightContain(long[] f, int hash) {
+        long bits = bitsFor(hash);
+        return (f[(hash * 0x9E3779B9) >>> filterShift] & bits) == bits;
+    }
+
+    /**
+     * Возвращает количество поисков, которые фильтр отсек без обращения к таблице.
+     * @return количество отсеченных промахов
+     */
+    public long rejectedLookups() {
+        return rejected;
+    }
+
+    /**
+     * Возвращает количество промахов, которые прошли через фильтр и потребовали
+     * поиска в таблице.
+     * @return количество ложных срабатываний фильтра
+     */
+    public long falsePositives() {
+        return falsePositives;
+    }
+
+    long[] getFilter() {
+        return filter;
+    }
+
+    int getTouchedWordCount() {
+        return touchedWordCount;
+    }
+}
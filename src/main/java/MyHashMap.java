@@ -1,4 +1,8 @@
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
 /**
@@ -17,11 +21,22 @@ public class MyHashMap<K, V> implements Map<K, V> {
     Collection<V> values;
     private int size;
     private int threshold;
+    /**
+     * Индексы корзин, которые стали непустыми после последней очистки,
+     * {@code touchedCount < 0} означает, что список переполнен
+     */
+    private int[] touched;
+    private int touchedCount;
     final float loadFactor;
+    final Equivalence<Object> equivalence;
 
     static final int MAXIMUM_CAPACITY = 1 << 30;
     static final int INITIAL_CAPACITY = 16;
     static final float LOAD_FACTOR = 0.75F;
+    /** список затронутых корзин не длиннее {@code table.length >>> TOUCHED_SHIFT} */
+    static final int TOUCHED_SHIFT = 3;
+    /** количество корзин (или пар для {@code putAllAsync}) в одной порции асинхронных операций */
+    static final int ASYNC_CHUNK = 1024;
 
     /**
      * Конструктор с начальной емкостью таблицы и коэффициентом загрузки,
@@ -36,6 +51,21 @@ public class MyHashMap<K, V> implements Map<K, V> {
      * @param loadFactor коэффициент загрузки, влияет на быстродействие HashMap
      */
     public MyHashMap(int capacity, float loadFactor) {
+        this(capacity, loadFactor, null);
+    }
+
+    /**
+     * Конструктор с начальной емкостью, коэффициентом загрузки и стратегией
+     * сравнения ключей. Если {@code equivalence} равно {@code null}, то ключи
+     * сравниваются через {@code equals} и {@code hashCode}, иначе через
+     * {@link Equivalence#equivalent} и {@link Equivalence#hash}, например,
+     * по ссылке ({@link Equivalence#identity()}) или по содержимому массива.
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки, влияет на быстродействие HashMap
+     * @param equivalence стратегия сравнения ключей или {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public MyHashMap(int capacity, float loadFactor, Equivalence<? super K> equivalence) {
         if (capacity < 0) {
             throw new IllegalArgumentException("capacity < 0");
         }
@@ -45,6 +75,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
         }
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(capacity);
+        this.equivalence = (Equivalence<Object>) equivalence;
     }
 
     /**
@@ -63,6 +94,18 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     public MyHashMap() {
         this.loadFactor = LOAD_FACTOR;
+        this.equivalence = null;
+    }
+
+    /**
+     * Создает объект хэш таблицы с дефолтным {@code loadFactor} (0.75) и
+     * заданной стратегией сравнения ключей
+     * @param equivalence стратегия сравнения ключей или {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public MyHashMap(Equivalence<? super K> equivalence) {
+        this.loadFactor = LOAD_FACTOR;
+        this.equivalence = (Equivalence<Object>) equivalence;
     }
 
     /**
@@ -105,15 +148,18 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     final Node<K,V> getNode(Object key) {
         Node<K,V>[] tab; Node<K,V> first, e; int tabLength, hash;
+        Equivalence<Object> eq = equivalence;
         if ((tab = table) != null && (tabLength = tab.length) > 0 &&
-                (first = tab[(tabLength - 1) & (hash = hash(key))]) != null) {
+                (first = tab[(tabLength - 1) & (hash = hashOf(key))]) != null) {
             if (first.hash == hash &&
-                    (first.key == key || (key != null && key.equals(first.key))))
+                    (first.key == key || (key != null &&
+                            (eq == null ? key.equals(first.key) : eq.equivalent(key, first.key)))))
                 return first;
             if ((e = first.next) != null) {
                 do {
                     if (e.hash == hash &&
-                            (e.key == key || (key != null && key.equals(e.key))))
+                            (e.key == key || (key != null &&
+                                    (eq == null ? key.equals(e.key) : eq.equivalent(key, e.key)))))
                         return e;
                 } while ((e = e.next) != null);
             }
@@ -134,7 +180,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
      * ранее связывала {@code null} с {@code key}.)
      */
     public V put(K key, V value) {
-        return putVal(hash(key), key, value);
+        return putVal(hashOf(key), key, value);
     }
 
     /**
@@ -147,14 +193,18 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     final V putVal(int hash, K key, V value) {
         Node<K,V>[] tab; int n, i; Node<K,V> tabNode;
+        Equivalence<Object> eq = equivalence;
         if ((tab = table) == null || (n = table.length) == 0)
             n = (tab = resize()).length;
-        if ((tabNode = tab[i = ((n - 1) & hash)]) == null)
-            tab[i] = new Node<>(key, value, null, hash);
+        if ((tabNode = tab[i = ((n - 1) & hash)]) == null) {
+            tab[i] = newNode(hash, key, value, null);
+            touch(i);
+        }
         else {
             Node<K,V> workNode = tabNode;
             while (!(tabNode.hash == hash &&
-                    ((tabNode.key == key) || (key != null && key.equals(tabNode.key))))) {
+                    ((tabNode.key == key) || (key != null &&
+                            (eq == null ? key.equals(tabNode.key) : eq.equivalent(key, tabNode.key)))))) {
                 if ((workNode = tabNode.next) == null) break;
                 tabNode = tabNode.next;
             }
@@ -164,13 +214,88 @@ public class MyHashMap<K, V> implements Map<K, V> {
                 return oldValue;
             }
             else {
-                tabNode.next = new Node<>(key, value, null, hash);
+                tabNode.next = newNode(hash, key, value, null);
             }
         }
         if (++size > threshold) resize();
         return null;
     }
 
+    /**
+     * Возвращает узел для ключа, а если ключа нет, то вставляет узел со
+     * значением {@code null} и возвращает его. Требует одного прохода по цепочке,
+     * в отличие от пары {@code getNode} и {@code putVal}.
+     *
+     * @param hash хэш для ключа
+     * @param key ключ
+     * @return найденный или вставленный узел
+     */
+    final Node<K,V> findOrInsert(int hash, K key) {
+        Node<K,V>[] tab; Node<K,V> e; int n, i;
+        Equivalence<Object> eq = equivalence;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        for (e = tab[i = (n - 1) & hash]; e != null; e = e.next) {
+            if (e.hash == hash && (e.key == key || (key != null &&
+                    (eq == null ? key.equals(e.key) : eq.equivalent(key, e.key)))))
+                return e;
+        }
+        if (tab[i] == null)
+            touch(i);
+        tab[i] = e = newNode(hash, key, null, tab[i]);
+        if (++size > threshold) resize();
+        return e;
+    }
+
+    /**
+     * Вставляет пару, ключа которой гарантированно нет в карте: узел ставится
+     * в начало цепочки без сравнения ключей и без проверки порога.
+     * Используется при загрузке карты, когда таблица уже подобрана под итоговый размер.
+     *
+     * @param hash хэш для ключа
+     * @param key ключ, которого нет в карте
+     * @param value значение для вставки
+     */
+    final void putFresh(int hash, K key, V value) {
+        Node<K,V>[] tab; int i;
+        if ((tab = table) == null || tab.length == 0)
+            tab = resize();
+        if (tab[i = (tab.length - 1) & hash] == null)
+            touch(i);
+        tab[i] = newNode(hash, key, value, tab[i]);
+        ++size;
+    }
+
+    /**
+     * Создает новый узел для вставки в таблицу. Наследники могут переопределить
+     * этот метод, например, чтобы переиспользовать ранее удаленные узлы.
+     *
+     * @param hash хэш для ключа
+     * @param key ключ
+     * @param value значение
+     * @param next следующий узел в цепочке
+     * @return новый узел
+     */
+    Node<K,V> newNode(int hash, K key, V value, Node<K,V> next) {
+        return new Node<>(key, value, next, hash);
+    }
+
+    /**
+     * Вызывается после того, как узел был удален из таблицы. Наследники могут
+     * переопределить этот метод, чтобы поддерживать собственные структуры над узлами.
+     *
+     * @param e удаленный узел
+     */
+    void afterNodeRemoval(Node<K,V> e) { }
+
+    /**
+     * Вызывается после того, как таблица была создана или расширена, когда все
+     * узлы уже перенесены в новую таблицу и {@code threshold} обновлен.
+     *
+     * @param newTab новая таблица
+     */
+    void afterResize(Node<K,V>[] newTab) { }
+
     /**
      * Создает таблицу, если не была создана, или вдвое увеличивает размер, если возможно.
      * Если {@code table == null}, то создает новую, в соответствии с начальной
@@ -217,7 +342,10 @@ public class MyHashMap<K, V> implements Map<K, V> {
         threshold = newThr;
         Node<K,V>[] newTab = (Node<K,V>[]) new Node[newCap];
         table = newTab;
+        touchedCount = 0;
         if (oldTab != null) {
+            // после расширения заполнено больше 3/8 корзин, что больше предела списка
+            touchedCount = -1;
             Node<K,V> e;
             for (int j = 0; j < oldCap ; ++j) {
                 if ((e = oldTab[j]) != null) {
@@ -259,6 +387,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
                 }
             }
         }
+        afterResize(newTab);
         return newTab;
     }
 
@@ -273,7 +402,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     public V remove(Object key) {
         Node<K,V> e;
-        return (e = removeNode(hash(key), key, null)) == null ? null : e.value;
+        return (e = removeNode(hashOf(key), key, null)) == null ? null : e.value;
     }
 
     /**
@@ -286,18 +415,21 @@ public class MyHashMap<K, V> implements Map<K, V> {
      */
     final Node<K,V> removeNode(int hash, Object key, Object value) {
         Node<K,V>[] tab; Node<K,V> firstNode; int index, n;
+        Equivalence<Object> eq = equivalence;
         if ((tab = table) != null && (n = tab.length) > 0 &&
                 (firstNode = tab[index = ((n - 1) & hash)]) != null) {
             Node<K,V> workNode, delNode = null; K k;
             if (firstNode.hash == hash &&
-                    (((k = firstNode.key) == key) || ((key != null) && key.equals(k))))
+                    (((k = firstNode.key) == key) || ((key != null) &&
+                            (eq == null ? key.equals(k) : eq.equivalent(key, k)))))
                 delNode = firstNode;
             else {
                 if ((workNode = firstNode.next) != null) {
                     do {
                         if (workNode.hash == hash &&
                                 ((k = workNode.key) == key ||
-                                        ((key != null) && key.equals(k)))) {
+                                        ((key != null) &&
+                                                (eq == null ? key.equals(k) : eq.equivalent(key, k))))) {
                             delNode = workNode;
                             break;
                         }
@@ -310,6 +442,8 @@ public class MyHashMap<K, V> implements Map<K, V> {
                     tab[index] = delNode.next;
                 else
                     firstNode.next = delNode.next;
+                --size;
+                afterNodeRemoval(delNode);
                 return delNode;
             }
         }
@@ -324,9 +458,21 @@ public class MyHashMap<K, V> implements Map<K, V> {
      * @throws NullPointerException если указанная карта равна null
      */
     public void putAll(Map<? extends K, ? extends V> m) {
-        Node<K,V>[] tab;
-        int s = m.size();
-        if ((tab = table) == null) {
+        presize(m.size());
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K key = e.getKey();
+            V value = e.getValue();
+            putVal(hashOf(key), key, value);
+        }
+    }
+
+    /**
+     * Подбирает таблицу под {@code s} элементов: если таблицы нет, увеличивает
+     * начальную емкость, иначе расширяет таблицу заранее.
+     * @param s ожидаемое количество элементов
+     */
+    private void presize(int s) {
+        if (table == null) {
             float fts = (float) s / loadFactor + 1.0F;
             int its = (fts < MAXIMUM_CAPACITY) ? (int) fts : MAXIMUM_CAPACITY;
             if (threshold < its)
@@ -336,26 +482,58 @@ public class MyHashMap<K, V> implements Map<K, V> {
             while (s > threshold && table.length < MAXIMUM_CAPACITY)
                 resize();
         }
-        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
-            K key = e.getKey();
-            V value = e.getValue();
-            putVal(hash(key), key, value);
-        }
     }
 
     /**
      * Не изменяет размер таблицы. Ставит во все ячейки таблицы значение {@code null}.
      * Также ставит {@code size = 0}
+     *
+     * Обнуляются только корзины, которые стали непустыми после последней очистки,
+     * поэтому очистка большой таблицы с несколькими элементами не проходит по всей
+     * таблице. Если таких корзин больше {@code table.length >>> TOUCHED_SHIFT},
+     * то обнуляется вся таблица, и это стоит не больше, чем вставки, которые
+     * заполнили эти корзины.
      */
     public void clear() {
         Node<K,V>[] tab;
-        if ((tab = table) != null && size > 0) {
-            size = 0;
-            for (int i = 0; i < tab.length; ++i)
-                tab[i] = null;
+        if ((tab = table) != null) {
+            if (size > 0) {
+                size = 0;
+                int n = touchedCount;
+                if (n < 0) {
+                    for (int i = 0; i < tab.length; ++i)
+                        tab[i] = null;
+                }
+                else {
+                    int[] t = touched;
+                    for (int k = 0; k < n; ++k)
+                        tab[t[k]] = null;
+                }
+            }
+            touchedCount = 0;
         }
     }
 
+    /**
+     * Запоминает корзину, которая стала непустой, для {@link #clear()}.
+     * @param i индекс корзины
+     */
+    private void touch(int i) {
+        int n, limit; int[] t;
+        if ((n = touchedCount) < 0)
+            return;
+        if ((t = touched) == null || n == t.length) {
+            if (n >= (limit = table.length >>> TOUCHED_SHIFT)) {
+                touchedCount = -1;
+                return;
+            }
+            touched = t = (t == null) ? new int[Math.min(INITIAL_CAPACITY, limit)]
+                                      : Arrays.copyOf(t, Math.min(n << 1, limit));
+        }
+        t[n] = i;
+        touchedCount = n + 1;
+    }
+
     public boolean containsKey(Object key) {
         return getNode(key) != null;
     }
@@ -382,6 +560,165 @@ public class MyHashMap<K, V> implements Map<K, V> {
     }
 
 
+    /**
+     * Асинхронный {@link #putAll(Map)}: пары вставляются порциями по
+     * {@link #ASYNC_CHUNK} штук, каждая порция - отдельная задача на {@code executor},
+     * поэтому между порциями исполнитель может выполнять другие задачи.
+     * Карта не потокобезопасна: до завершения результата ее нельзя использовать
+     * из других потоков, а {@code m} нельзя изменять.
+     *
+     * @param m отображения, которые должны быть сохранены в этой карте
+     * @param executor исполнитель порций
+     * @return результат, который завершается после вставки всех пар
+     */
+    public CompletableFuture<Void> putAllAsync(Map<? extends K, ? extends V> m, Executor executor) {
+        presize(m.size());
+        Iterator<? extends Map.Entry<? extends K, ? extends V>> it = m.entrySet().iterator();
+        return runChunked(() -> {
+            for (int n = 0; n < ASYNC_CHUNK && it.hasNext(); ++n) {
+                Map.Entry<? extends K, ? extends V> e = it.next();
+                put(e.getKey(), e.getValue());
+            }
+            return it.hasNext();
+        }, executor);
+    }
+
+    /**
+     * То же, что {@link #putAllAsync(Map, Executor)}, но порции выполняются в
+     * вызывающем потоке, который уступает процессор через {@link Thread#yield()}
+     * после каждой порции. В виртуальном потоке это освобождает поток-носитель.
+     */
+    public CompletableFuture<Void> putAllAsync(Map<? extends K, ? extends V> m) {
+        return putAllAsync(m, null);
+    }
+
+    /**
+     * Асинхронно ищет пары, удовлетворяющие условию, проходя таблицу порциями
+     * по {@link #ASYNC_CHUNK} корзин. Также заменяет {@link #containsValue(Object)}
+     * для больших карт: {@code scanAsync((k, v) -> value.equals(v))}.
+     * Карту нельзя изменять до завершения результата.
+     *
+     * @param predicate условие для ключа и значения
+     * @param executor исполнитель порций
+     * @return результат со списком найденных пар в порядке обхода таблицы
+     */
+    public CompletableFuture<List<Map.Entry<K,V>>> scanAsync(BiPredicate<? super K, ? super V> predicate,
+                                                            Executor executor) {
+        Node<K,V>[] tab = table;
+        List<Map.Entry<K,V>> found = new ArrayList<>();
+        if (tab == null || size == 0)
+            return CompletableFuture.completedFuture(found);
+        int[] next = new int[1];
+        return runChunked(() -> {
+            int i = next[0], end = Math.min(i + ASYNC_CHUNK, tab.length);
+            for (; i < end; ++i) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    if (predicate.test(e.key, e.value))
+                        found.add(new AbstractMap.SimpleImmutableEntry<>(e.key, e.value));
+                }
+            }
+            return (next[0] = end) < tab.length;
+        }, executor).thenApply(v -> found);
+    }
+
+    /**
+     * То же, что {@link #scanAsync(BiPredicate, Executor)}, но порции выполняются
+     * в вызывающем потоке с {@link Thread#yield()} между ними.
+     */
+    public CompletableFuture<List<Map.Entry<K,V>>> scanAsync(BiPredicate<? super K, ? super V> predicate) {
+        return scanAsync(predicate, null);
+    }
+
+    /**
+     * Асинхронный {@link #clear()}: если известен список затронутых корзин,
+     * то очищает только их за одну порцию, иначе обнуляет таблицу порциями по
+     * {@link #ASYNC_CHUNK} корзин, размер становится равным нулю после последней порции.
+     * Карту нельзя использовать до завершения результата.
+     *
+     * @param executor исполнитель порций
+     * @return результат, который завершается после очистки
+     */
+    public CompletableFuture<Void> clearAsync(Executor executor) {
+        Node<K,V>[] tab = table;
+        int[] next = new int[1];
+        return runChunked(() -> {
+            if (tab == null || size == 0 || touchedCount >= 0) {
+                clear();
+                return false;
+            }
+            int end = Math.min(next[0] + ASYNC_CHUNK, tab.length);
+            Arrays.fill(tab, next[0], end, null);
+            if ((next[0] = end) < tab.length)
+                return true;
+            size = 0;
+            clear();
+            return false;
+        }, executor);
+    }
+
+    /**
+     * То же, что {@link #clearAsync(Executor)}, но порции выполняются в вызывающем
+     * потоке с {@link Thread#yield()} между ними.
+     */
+    public CompletableFuture<Void> clearAsync() {
+        return clearAsync(null);
+    }
+
+    /**
+     * Выполняет порции работы, пока {@code chunk} возвращает {@code true}.
+     * Если {@code executor} равен {@code null}, порции выполняются в вызывающем
+     * потоке, который уступает процессор между ними, иначе каждая порция
+     * отправляется на {@code executor} отдельной задачей после предыдущей.
+     * Исключение из порции завершает результат исключительно.
+     */
+    static CompletableFuture<Void> runChunked(BooleanSupplier chunk, Executor executor) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (executor == null) {
+            try {
+                while (chunk.getAsBoolean())
+                    Thread.yield();
+                result.complete(null);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+        else {
+            new ChunkTask(chunk, executor, result).submit();
+        }
+        return result;
+    }
+
+    static final class ChunkTask implements Runnable {
+        final BooleanSupplier chunk;
+        final Executor executor;
+        final CompletableFuture<Void> result;
+
+        ChunkTask(BooleanSupplier chunk, Executor executor, CompletableFuture<Void> result) {
+            this.chunk = chunk;
+            this.executor = executor;
+            this.result = result;
+        }
+
+        void submit() {
+            try {
+                executor.execute(this);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        public void run() {
+            try {
+                if (chunk.getAsBoolean())
+                    submit();
+                else
+                    result.complete(null);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
     /**
      * Вычисляет hash для ключа. Т.к. для вычисления индекса, из-за того что размер таблицы
      * это степень двойки, используются только младшие биты, то для улучшения распределения
@@ -394,6 +731,19 @@ public class MyHashMap<K, V> implements Map<K, V> {
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * Вычисляет hash для ключа с учетом стратегии сравнения ключей этой карты.
+     * Если стратегия не задана, то совпадает с {@link #hash(Object)}.
+     * @param key ключ
+     * @return hash
+     */
+    final int hashOf(Object key) {
+        Equivalence<Object> eq; int h;
+        if ((eq = equivalence) == null)
+            return hash(key);
+        return (key == null) ? 0 : (h = eq.hash(key)) ^ (h >>> 16);
+    }
+
     /**
      * Рассчитывает размер таблицы, для заданного пользователем начального значения.
      * Размер всегда является степенью двойки, для использования быстрых побитовых операций.
@@ -466,6 +816,8 @@ public class MyHashMap<K, V> implements Map<K, V> {
                     workNode.next = next;
                 }
             }
+            --size;
+            afterNodeRemoval(current);
             current = null;
         }
     }
@@ -502,14 +854,16 @@ public class MyHashMap<K, V> implements Map<K, V> {
                 return false;
             Object key = e.getKey();
             Node<K,V> candidate = getNode(key);
-            return candidate != null && candidate.equals(e);
+            // ключ уже сравнен через стратегию карты, Node.equals сравнил бы его через equals
+            return candidate != null && Objects.equals(candidate.value, e.getValue());
         }
 
         public final boolean remove(Object o) {
             if (o instanceof Map.Entry<?, ?> e) {
                 Object key = e.getKey();
-                Object value = e.getValue();
-                return removeNode(hash(key), key, value) != null;
+                Node<K,V> candidate = getNode(key);
+                return candidate != null && Objects.equals(candidate.value, e.getValue())
+                        && removeNode(candidate.hash, key, null) != null;
             }
             return false;
         }
@@ -535,7 +889,7 @@ public class MyHashMap<K, V> implements Map<K, V> {
         public boolean contains(Object o) { return containsKey(o); }
 
         public boolean remove(Object key) {
-            return removeNode(hash(key), key, null) != null;
+            return removeNode(hashOf(key), key, null) != null;
         }
     }
 
@@ -572,6 +926,11 @@ public class MyHashMap<K, V> implements Map<K, V> {
 
     void setTable(Node<K, V>[] tab) {
         table = tab;
+        touchedCount = -1;
+    }
+
+    int getTouchedCount() {
+        return touchedCount;
     }
 
 }
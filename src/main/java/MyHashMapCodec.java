@@ -0,0 +1,239 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Компактный двоичный формат для {@link MyHashMap}.
+ *
+ * Формат: сигнатура {@link #MAGIC}, версия формата, коэффициент загрузки,
+ * количество элементов, затем для каждого элемента байт флагов
+ * ({@code null} ключ, {@code null} значение) и данные ключа и значения,
+ * записанные через {@link Serializer}.
+ *
+ * Запись идет напрямую по таблице карты, без промежуточных коллекций.
+ * Чтение создает карту, таблица которой сразу подобрана под записанный
+ * размер и коэффициент загрузки, и вставляет элементы без поиска по цепочке
+ * и без проверки порога.
+ *
+ * Стратегия сравнения ключей ({@link Equivalence}) в формат не входит:
+ * карту, созданную со стратегией, нужно читать методами, которые принимают
+ * ту же стратегию, иначе ключи, различные для нее, могут оказаться
+ * одинаковыми по {@code equals}.
+ *
+ * @param <K> тип ключей
+ * @param <V> тип значений
+ */
+public class MyHashMapCodec<K, V> {
+
+    static final int MAGIC = 0x4D484D31;
+    static final byte VERSION = 1;
+
+    static final int NULL_KEY = 1;
+    static final int NULL_VALUE = 1 << 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Запись и чтение одного ключа или значения. Значение {@code null}
+     * кодек обрабатывает сам, поэтому сериализатор его не получает.
+     *
+     * @param <T> тип объекта
+     */
+    public interface Serializer<T> {
+        void write(DataOutput out, T value) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    public static final Serializer<Integer> INTEGER = new Serializer<>() {
+        public void write(DataOutput out, Integer value) throws IOException { out.writeInt(value); }
+
+        public Integer read(DataInput in) throws IOException { return in.readInt(); }
+    };
+
+    public static final Serializer<Long> LONG = new Serializer<>() {
+        public void write(DataOutput out, Long value) throws IOException { out.writeLong(value); }
+
+        public Long read(DataInput in) throws IOException { return in.readLong(); }
+    };
+
+    /**
+     * Строки записываются как длина в байтах и байты в UTF-8,
+     * поэтому длина строки не ограничена 64 Кб, как у {@code writeUTF}.
+     */
+    public static final Serializer<String> STRING = new Serializer<>() {
+        public void write(DataOutput out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        public String read(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    final Serializer<K> keySerializer;
+    final Serializer<V> valueSerializer;
+
+    /**
+     * @param keySerializer сериализатор ключей
+     * @param valueSerializer сериализатор значений
+     */
+    public MyHashMapCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this.keySerializer = Objects.requireNonNull(keySerializer);
+        this.valueSerializer = Objects.requireNonNull(valueSerializer);
+    }
+
+    /**
+     * Записывает карту в поток. Поток не закрывается.
+     *
+     * @param map карта
+     * @param out поток для записи
+     * @throws IOException при ошибке записи
+     */
+    public void write(MyHashMap<K, V> map, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        write(map, (DataOutput) data);
+        data.flush();
+    }
+
+    /**
+     * Записывает карту в канал с его текущей позиции. Канал не закрывается.
+     *
+     * @param map карта
+     * @param channel канал для записи
+     * @throws IOException при ошибке записи
+     */
+    public void write(MyHashMap<K, V> map, FileChannel channel) throws IOException {
+        write(map, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Записывает заголовок и все элементы карты. Если элементы лежат в таблице,
+     * то она обходится напрямую, иначе (например, у {@link MyCompactHashMap}
+     * в компактном представлении) используется {@code entrySet()}.
+     *
+     * @param map карта
+     * @param out куда записывать
+     * @throws IOException при ошибке записи
+     */
+    @SuppressWarnings("unchecked")
+    public void write(MyHashMap<K, V> map, DataOutput out) throws IOException {
+        int size = map.size();
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeFloat(map.loadFactor);
+        out.writeInt(size);
+        Node<K, V>[] tab = map.getTable();
+        int written = 0;
+        if (tab != null) {
+            for (Node<K, V> e : tab) {
+                for (; e != null; e = e.next, ++written)
+                    writeEntry(out, e.key, e.value);
+            }
+        }
+        else if (size > 0) {
+            for (Map.Entry<K, V> e : map.entrySet()) {
+                writeEntry(out, e.getKey(), e.getValue());
+                ++written;
+            }
+        }
+        if (written != size)
+            throw new IllegalStateException("map was modified during write");
+    }
+
+    void writeEntry(DataOutput out, K key, V value) throws IOException {
+        out.writeByte((key == null ? NULL_KEY : 0) | (value == null ? NULL_VALUE : 0));
+        if (key != null)
+            keySerializer.write(out, key);
+        if (value != null)
+            valueSerializer.write(out, value);
+    }
+
+    /**
+     * Читает карту из потока. Поток читается с буферизацией, поэтому после
+     * чтения из него могут быть забраны байты, идущие за картой. Поток не закрывается.
+     *
+     * @param in поток для чтения
+     * @return прочитанная карта
+     * @throws IOException при ошибке чтения или неверном формате
+     */
+    public MyHashMap<K, V> read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Читает карту из потока в карту со стратегией сравнения ключей
+     * {@code equivalence}. Поток не закрывается.
+     *
+     * @param in поток для чтения
+     * @param equivalence стратегия, с которой карта была записана, или {@code null}
+     * @return прочитанная карта
+     * @throws IOException при ошибке чтения или неверном формате
+     */
+    public MyHashMap<K, V> read(InputStream in, Equivalence<? super K> equivalence) throws IOException {
+        return read((DataInput) new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE)), equivalence);
+    }
+
+    /**
+     * Читает карту из канала с его текущей позиции. Канал читается с буферизацией,
+     * поэтому после чтения его позиция может оказаться дальше конца карты.
+     * Канал не закрывается.
+     *
+     * @param channel канал для чтения
+     * @return прочитанная карта
+     * @throws IOException при ошибке чтения или неверном формате
+     */
+    public MyHashMap<K, V> read(FileChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Читает заголовок, создает карту с таблицей под записанный размер
+     * и вставляет элементы.
+     *
+     * @param in откуда читать
+     * @return прочитанная карта
+     * @throws IOException при ошибке чтения или неверном формате
+     */
+    public MyHashMap<K, V> read(DataInput in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Читает заголовок, создает карту со стратегией сравнения ключей
+     * {@code equivalence} и вставляет элементы с хэшем этой стратегии.
+     *
+     * @param in откуда читать
+     * @param equivalence стратегия, с которой карта была записана, или {@code null}
+     * @return прочитанная карта
+     * @throws IOException при ошибке чтения или неверном формате
+     */
+    public MyHashMap<K, V> read(DataInput in, Equivalence<? super K> equivalence) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Not a MyHashMap stream");
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new InvalidObjectException("Unsupported version: " + version);
+        float loadFactor = in.readFloat();
+        int size = in.readInt();
+        if (size < 0 || loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new StreamCorruptedException("Illegal header");
+        float fts = (float) size / loadFactor + 1.0F;
+        int capacity = (fts < MyHashMap.MAXIMUM_CAPACITY) ? (int) fts : MyHashMap.MAXIMUM_CAPACITY;
+        MyHashMap<K, V> map = new MyHashMap<>(capacity, loadFactor, equivalence);
+        for (int i = 0; i < size; ++i) {
+            int flags = in.readUnsignedByte();
+            K key = (flags & NULL_KEY) != 0 ? null : keySerializer.read(in);
+            V value = (flags & NULL_VALUE) != 0 ? null : valueSerializer.read(in);
+            map.putFresh(map.hashOf(key), key, value);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Хэш таблица, в которой одному ключу может соответствовать несколько значений.
+ * Использует ту же структуру, что и {@link MyHashMap}: таблицу размером
+ * степень двойки, цепочки для коллизий и отложенную инициализацию.
+ *
+ * Значения хранятся прямо в узле ключа: единственное значение хранится
+ * без обертки, а при добавлении второго создается массив, который растет вдвое.
+ * Поэтому добавление значения требует одного поиска в таблице и не создает
+ * отдельный список для каждого ключа.
+ *
+ * @param <K> тип ключей
+ * @param <V> тип хранимых значений
+ */
+public class MyHashMultimap<K, V> {
+
+    private MultiNode<K>[] table;
+    private int size;
+    private int valueCount;
+    private int threshold;
+    final float loadFactor;
+
+    static final int INITIAL_VALUES_CAPACITY = 4;
+
+    /**
+     * @param capacity емкость после вставки первого ключа (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     */
+    public MyHashMultimap(int capacity, float loadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (capacity > MyHashMap.MAXIMUM_CAPACITY) capacity = MyHashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor");
+        }
+        this.loadFactor = loadFactor;
+        this.threshold = MyHashMap.tableSizeFor(capacity);
+    }
+
+    /**
+     * @param capacity емкость после вставки первого ключа (доводится до степени двойки)
+     */
+    public MyHashMultimap(int capacity) {
+        this(capacity, MyHashMap.LOAD_FACTOR);
+    }
+
+    public MyHashMultimap() {
+        this.loadFactor = MyHashMap.LOAD_FACTOR;
+    }
+
+    /**
+     * Узел мультимапы. Если {@code count == 1}, то в {@code values} лежит
+     * само значение, если {@code count > 1}, то массив значений.
+     */
+    static final class MultiNode<K> {
+        final int hash;
+        final K key;
+        Object values;
+        int count;
+        MultiNode<K> next;
+
+        MultiNode(int hash, K key, Object value, MultiNode<K> next) {
+            this.hash = hash;
+            this.key = key;
+            this.values = value;
+            this.count = 1;
+            this.next = next;
+        }
+
+        Object valueAt(int i) {
+            return count == 1 ? values : ((Object[]) values)[i];
+        }
+
+        void append(Object value) {
+            if (count == 1) {
+                Object[] a = new Object[INITIAL_VALUES_CAPACITY];
+                a[0] = values;
+                values = a;
+            }
+            else if (count == ((Object[]) values).length) {
+                values = Arrays.copyOf((Object[]) values, count << 1);
+            }
+            ((Object[]) values)[count++] = value;
+        }
+    }
+
+    /**
+     * Возвращает количество различных ключей.
+     * @return количество различных ключей
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает количество значений по всем ключам.
+     * @return количество значений по всем ключам
+     */
+    public int valueCount() {
+        return valueCount;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Добавляет значение к списку значений ключа. Значения одного ключа
+     * хранятся в порядке добавления, повторы допускаются.
+     *
+     * @param key ключ
+     * @param value значение
+     */
+    public void put(K key, V value) {
+        putHashed(MyHashMap.hash(key), key, value);
+    }
+
+    /**
+     * Добавляет значение по заранее вычисленному хэшу ключа.
+     *
+     * @param hash хэш для ключа, см. {@link MyHashMap#hash(Object)}
+     * @param key ключ
+     * @param value значение
+     */
+    final void putHashed(int hash, K key, V value) {
+        MultiNode<K>[] tab; MultiNode<K> e; int n, i;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        for (e = tab[i = (n - 1) & hash]; e != null; e = e.next) {
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                e.append(value);
+                ++valueCount;
+                return;
+            }
+        }
+        tab[i] = new MultiNode<>(hash, key, value, tab[i]);
+        ++valueCount;
+        if (++size > threshold) resize();
+    }
+
+    /**
+     * Возвращает значения ключа в виде неизменяемого представления. Представление
+     * отражает значения, добавленные после вызова, пока ключ не удален через
+     * {@link #removeAll(Object)} или {@link #clear()}. Если ключа нет, возвращается пустой список.
+     *
+     * @param key ключ
+     * @return представление значений ключа
+     */
+    public List<V> get(Object key) {
+        MultiNode<K> e;
+        return (e = getNode(key)) == null ? Collections.emptyList() : new ValuesView(e);
+    }
+
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    final MultiNode<K> getNode(Object key) {
+        return getNode(MyHashMap.hash(key), key);
+    }
+
+    final MultiNode<K> getNode(int hash, Object key) {
+        MultiNode<K>[] tab; MultiNode<K> e; int n;
+        if ((tab = table) != null && (n = tab.length) > 0) {
+            for (e = tab[(n - 1) & hash]; e != null; e = e.next) {
+                if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key))))
+                    return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Удаляет ключ вместе со всеми его значениями.
+     *
+     * @param key ключ
+     * @return удаленные значения в порядке добавления или пустой список, если ключа не было
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> removeAll(Object key) {
+        MultiNode<K>[] tab; MultiNode<K> e, prev = null; int n, i, hash;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            return Collections.emptyList();
+        hash = MyHashMap.hash(key);
+        for (e = tab[i = (n - 1) & hash]; e != null; prev = e, e = e.next) {
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                if (prev == null)
+                    tab[i] = e.next;
+                else
+                    prev.next = e.next;
+                --size;
+                valueCount -= e.count;
+                List<V> removed = e.count == 1
+                        ? Collections.singletonList((V) e.values)
+                        : (List<V>) Arrays.asList(Arrays.copyOf((Object[]) e.values, e.count));
+                e.values = null;
+                e.count = 0;
+                return removed;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Не изменяет размер таблицы. Ставит во все ячейки таблицы значение {@code null}
+     * и, как {@link #removeAll(Object)}, отвязывает значения от узлов, поэтому
+     * полученные ранее представления становятся пустыми.
+     */
+    public void clear() {
+        MultiNode<K>[] tab;
+        if ((tab = table) != null && size > 0) {
+            size = 0;
+            valueCount = 0;
+            for (int i = 0; i < tab.length; ++i) {
+                for (MultiNode<K> e = tab[i]; e != null; e = e.next) {
+                    e.values = null;
+                    e.count = 0;
+                }
+                tab[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие для каждой пары ключ-значение.
+     * @param action действие
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        MultiNode<K>[] tab;
+        if ((tab = table) != null && size > 0) {
+            for (MultiNode<K> e : tab) {
+                for (; e != null; e = e.next) {
+                    for (int j = 0; j < e.count; ++j)
+                        action.accept(e.key, (V) e.valueAt(j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Создает таблицу или вдвое увеличивает ее размер, разделяя каждую цепочку
+     * на младшую и старшую части, как в {@link MyHashMap#resize()}.
+     */
+    @SuppressWarnings("unchecked")
+    final MultiNode<K>[] resize() {
+        MultiNode<K>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int newCap, newThr;
+        if (oldCap > 0) {
+            if (oldCap >= MyHashMap.MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (threshold > 0) {
+            newCap = threshold;
+        }
+        else {
+            newCap = MyHashMap.INITIAL_CAPACITY;
+        }
+        newThr = (newCap >= MyHashMap.MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int) (newCap * loadFactor);
+        threshold = newThr;
+        MultiNode<K>[] newTab = (MultiNode<K>[]) new MultiNode[newCap];
+        table = newTab;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                MultiNode<K> e, next;
+                MultiNode<K> loHead = null, loTail = null, hiHead = null, hiTail = null;
+                for (e = oldTab[j]; e != null; e = next) {
+                    next = e.next;
+                    if ((e.hash & oldCap) == 0) {
+                        if (loTail == null) loHead = e; else loTail.next = e;
+                        loTail = e;
+                    }
+                    else {
+                        if (hiTail == null) hiHead = e; else hiTail.next = e;
+                        hiTail = e;
+                    }
+                }
+                oldTab[j] = null;
+                if (loTail != null) {
+                    loTail.next = null;
+                    newTab[j] = loHead;
+                }
+                if (hiTail != null) {
+                    hiTail.next = null;
+                    newTab[j + oldCap] = hiHead;
+                }
+            }
+        }
+        return newTab;
+    }
+
+    final class ValuesView extends AbstractList<V> implements RandomAccess {
+        final MultiNode<K> node;
+
+        ValuesView(MultiNode<K> node) {
+            this.node = node;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(int index) {
+            Objects.checkIndex(index, node.count);
+            return (V) node.valueAt(index);
+        }
+
+        public int size() {
+            return node.count;
+        }
+    }
+
+    MultiNode<K>[] getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Операторы хэш-соединения и группировки поверх {@link MyHashMultimap} и {@link MyHashMap}.
+ *
+ * Хэш ключа каждой строки вычисляется один раз, на каждую строку приходится
+ * один поиск по цепочке, таблица для стороны построения заранее подбирается
+ * под ее размер. Параллельные варианты сначала раскладывают строки по разделам
+ * по старшим битам хэша, затем обрабатывают разделы независимо на {@link ForkJoinPool}:
+ * ключи разных разделов не пересекаются, поэтому разделы не нужно синхронизировать.
+ */
+public final class MyHashOperators {
+
+    private MyHashOperators() {
+    }
+
+    /**
+     * Тип хэш-соединения.
+     */
+    public enum JoinType {
+        /** только пары строк с совпадающими ключами */
+        INNER,
+        /** как INNER, но строка пробной стороны без пары выдается с {@code null} вместо строки построения */
+        LEFT,
+        /** каждая строка пробной стороны, у которой есть хотя бы одна пара, выдается один раз */
+        SEMI
+    }
+
+    /**
+     * Хэш-соединение: строит таблицу по {@code build}, затем проходит по {@code probe}.
+     * Для {@link JoinType#SEMI} в {@code combiner} передается первая подходящая
+     * строка построения, для {@link JoinType#LEFT} без пары передается {@code null}.
+     * Результат идет в порядке строк пробной стороны.
+     *
+     * @param type тип соединения
+     * @param build сторона построения
+     * @param buildKey ключ строки построения
+     * @param probe пробная сторона
+     * @param probeKey ключ пробной строки
+     * @param combiner результат для пары строк
+     * @return результат соединения
+     */
+    public static <L, R, K, O> List<O> hashJoin(JoinType type,
+                                                Collection<? extends L> build,
+                                                Function<? super L, ? extends K> buildKey,
+                                                Iterable<? extends R> probe,
+                                                Function<? super R, ? extends K> probeKey,
+                                                BiFunction<? super L, ? super R, ? extends O> combiner) {
+        Objects.requireNonNull(type);
+        MyHashMultimap<K, L> table = new MyHashMultimap<>(capacityFor(build.size()));
+        for (L l : build) {
+            K k = buildKey.apply(l);
+            table.putHashed(MyHashMap.hash(k), k, l);
+        }
+        List<O> out = new ArrayList<>();
+        for (R r : probe) {
+            K k = probeKey.apply(r);
+            probeRow(type, table, MyHashMap.hash(k), k, r, combiner, out);
+        }
+        return out;
+    }
+
+    /**
+     * Параллельное хэш-соединение. Обе стороны раскладываются по разделам
+     * по хэшу ключа, каждый раздел соединяется отдельной задачей на {@code pool}.
+     * Результат идет по разделам, внутри раздела в порядке строк пробной стороны.
+     *
+     * @param pool пул для задач
+     * @param type тип соединения
+     * @param build сторона построения
+     * @param buildKey ключ строки построения
+     * @param probe пробная сторона
+     * @param probeKey ключ пробной строки
+     * @param combiner результат для пары строк
+     * @return результат соединения
+     */
+    public static <L, R, K, O> List<O> hashJoin(ForkJoinPool pool, JoinType type,
+                                                Collection<? extends L> build,
+                                                Function<? super L, ? extends K> buildKey,
+                                                Iterable<? extends R> probe,
+                                                Function<? super R, ? extends K> probeKey,
+                                                BiFunction<? super L, ? super R, ? extends O> combiner) {
+        Objects.requireNonNull(type);
+        int bits = partitionBits(pool);
+        Partitions<K, L> buildParts = partition(build, buildKey, bits);
+        Partitions<K, R> probeParts = partition(probe, probeKey, bits);
+        List<ForkJoinTask<List<O>>> tasks = new ArrayList<>(1 << bits);
+        for (int p = 0; p < 1 << bits; ++p) {
+            final int part = p;
+            tasks.add(pool.submit(() -> {
+                MyHashMultimap<K, L> table = new MyHashMultimap<>(capacityFor(buildParts.counts[part]));
+                for (Node<K, L> e = buildParts.heads[part]; e != null; e = e.next)
+                    table.putHashed(e.hash, e.key, e.value);
+                List<O> out = new ArrayList<>();
+                for (Node<K, R> e = probeParts.heads[part]; e != null; e = e.next)
+                    probeRow(type, table, e.hash, e.key, e.value, combiner, out);
+                return out;
+            }));
+        }
+        List<O> out = new ArrayList<>();
+        for (ForkJoinTask<List<O>> task : tasks)
+            out.addAll(task.join());
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <L, R, K, O> void probeRow(JoinType type, MyHashMultimap<K, L> table,
+                                              int hash, K key, R r,
+                                              BiFunction<? super L, ? super R, ? extends O> combiner,
+                                              List<O> out) {
+        MyHashMultimap.MultiNode<K> e = table.getNode(hash, key);
+        if (e == null) {
+            if (type == JoinType.LEFT)
+                out.add(combiner.apply(null, r));
+            return;
+        }
+        if (type == JoinType.SEMI) {
+            out.add(combiner.apply((L) e.valueAt(0), r));
+            return;
+        }
+        for (int i = 0; i < e.count; ++i)
+            out.add(combiner.apply((L) e.valueAt(i), r));
+    }
+
+    /**
+     * Группирует строки по ключу и сворачивает каждую группу через {@link Collector}.
+     * На каждую строку приходится один проход по цепочке таблицы групп.
+     * Промежуточные контейнеры заменяются результатом {@code finisher} прямо
+     * в узлах той же таблицы.
+     *
+     * @param input строки
+     * @param key ключ группы
+     * @param aggregator агрегатор группы
+     * @return карта ключ группы - результат агрегатора
+     */
+    public static <T, K, A, R> MyHashMap<K, R> groupBy(Iterable<? extends T> input,
+                                                       Function<? super T, ? extends K> key,
+                                                       Collector<? super T, A, R> aggregator) {
+        MyHashMap<K, Object> groups = new MyHashMap<>();
+        Supplier<A> supplier = aggregator.supplier();
+        BiConsumer<A, ? super T> accumulator = aggregator.accumulator();
+        for (T t : input) {
+            K k = key.apply(t);
+            accumulate(groups, groups.hashOf(k), k, t, supplier, accumulator);
+        }
+        return finish(groups, aggregator);
+    }
+
+    /**
+     * Параллельная группировка: строки раскладываются по разделам по хэшу
+     * ключа, каждый раздел группируется отдельной задачей на {@code pool},
+     * после чего группы разделов переносятся в общую карту без поиска,
+     * т.к. ключи разных разделов не пересекаются.
+     *
+     * @param pool пул для задач
+     * @param input строки
+     * @param key ключ группы
+     * @param aggregator агрегатор группы
+     * @return карта ключ группы - результат агрегатора
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, K, A, R> MyHashMap<K, R> groupBy(ForkJoinPool pool,
+                                                       Iterable<? extends T> input,
+                                                       Function<? super T, ? extends K> key,
+                                                       Collector<? super T, A, R> aggregator) {
+        int bits = partitionBits(pool);
+        Partitions<K, T> parts = partition(input, key, bits);
+        Supplier<A> supplier = aggregator.supplier();
+        BiConsumer<A, ? super T> accumulator = aggregator.accumulator();
+        List<ForkJoinTask<MyHashMap<K, Object>>> tasks = new ArrayList<>(1 << bits);
+        for (int p = 0; p < 1 << bits; ++p) {
+            final int part = p;
+            tasks.add(pool.submit(() -> {
+                MyHashMap<K, Object> groups = new MyHashMap<>();
+                for (Node<K, T> e = parts.heads[part]; e != null; e = e.next)
+                    accumulate(groups, e.hash, e.key, e.value, supplier, accumulator);
+                return groups;
+            }));
+        }
+        List<MyHashMap<K, Object>> results = new ArrayList<>(tasks.size());
+        int total = 0;
+        for (ForkJoinTask<MyHashMap<K, Object>> task : tasks) {
+            MyHashMap<K, Object> groups = task.join();
+            results.add(groups);
+            total += groups.size();
+        }
+        MyHashMap<K, Object> merged = new MyHashMap<>(capacityFor(total));
+        for (MyHashMap<K, Object> groups : results) {
+            Node<K, Object>[] tab = groups.getTable();
+            if (tab == null)
+                continue;
+            for (Node<K, Object> e : tab) {
+                for (; e != null; e = e.next)
+                    merged.putFresh(e.hash, e.key, e.value);
+            }
+        }
+        return finish(merged, aggregator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, K, A> void accumulate(MyHashMap<K, Object> groups, int hash, K key, T t,
+                                             Supplier<A> supplier, BiConsumer<A, ? super T> accumulator) {
+        Node<K, Object> e = groups.findOrInsert(hash, key);
+        if (e.value == null)
+            e.value = supplier.get();
+        accumulator.accept((A) e.value, t);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, A, R> MyHashMap<K, R> finish(MyHashMap<K, Object> groups,
+                                                    Collector<?, A, R> aggregator) {
+        if (!aggregator.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH)) {
+            Function<A, R> finisher = aggregator.finisher();
+            Node<K, Object>[] tab = groups.getTable();
+            if (tab != null) {
+                for (Node<K, Object> e : tab) {
+                    for (; e != null; e = e.next)
+                        e.value = finisher.apply((A) e.value);
+                }
+            }
+        }
+        return (MyHashMap<K, R>) (MyHashMap<K, ?>) groups;
+    }
+
+    /**
+     * Строки, разложенные по разделам: для каждого раздела цепочка узлов
+     * (хэш, ключ, строка) в исходном порядке и их количество.
+     */
+    static final class Partitions<K, T> {
+        final Node<K, T>[] heads;
+        final int[] counts;
+
+        @SuppressWarnings("unchecked")
+        Partitions(int n) {
+            heads = (Node<K, T>[]) new Node[n];
+            counts = new int[n];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, T> Partitions<K, T> partition(Iterable<? extends T> rows,
+                                             Function<? super T, ? extends K> key, int bits) {
+        Partitions<K, T> parts = new Partitions<>(1 << bits);
+        Node<K, T>[] tails = (Node<K, T>[]) new Node[1 << bits];
+        for (T row : rows) {
+            K k = key.apply(row);
+            int hash = MyHashMap.hash(k);
+            int p = (hash * 0x9E3779B9) >>> (32 - bits);
+            Node<K, T> e = new Node<>(k, row, null, hash);
+            if (tails[p] == null)
+                parts.heads[p] = e;
+            else
+                tails[p].next = e;
+            tails[p] = e;
+            ++parts.counts[p];
+        }
+        return parts;
+    }
+
+    /**
+     * Количество битов раздела: не меньше четырех разделов на поток пула.
+     */
+    static int partitionBits(ForkJoinPool pool) {
+        int n = MyHashMap.tableSizeFor(Math.max(pool.getParallelism() << 2, 2));
+        return Integer.numberOfTrailingZeros(n);
+    }
+
+    /**
+     * Емкость таблицы, при которой {@code size} элементов помещаются без расширения.
+     */
+    static int capacityFor(int size) {
+        float fts = (float) size / MyHashMap.LOAD_FACTOR + 1.0F;
+        return (fts < MyHashMap.MAXIMUM_CAPACITY) ? (int) fts : MyHashMap.MAXIMUM_CAPACITY;
+    }
+}
@@ -0,0 +1,462 @@
+import java.util.*;
+
+/**
+ * Хэш таблица, которая не создает объектов на каждую вставку: элементы хранятся
+ * в параллельных массивах ({@code hashes}, {@code keys}, {@code vals},
+ * {@code nexts}), а корзины таблицы и цепочки - это индексы слотов в этих массивах.
+ * Слот, освобожденный удалением, попадает в список свободных слотов и
+ * занимается следующей вставкой, поэтому при чередовании {@code put}/{@code remove}
+ * в установившемся режиме память не выделяется.
+ *
+ * Массивы слотов растут вместе с таблицей и вмещают {@code threshold} элементов,
+ * т.е. список свободных слотов не превышает числа элементов, которое таблица
+ * может вместить без расширения.
+ *
+ * Элементы, которые возвращают итераторы, - не сами слоты, а представления,
+ * запомнившие ключ и поколение слота. Поколение увеличивается при каждом
+ * освобождении слота, поэтому, пока ключ занимает свой слот, элемент читает и
+ * записывает текущее значение, а после удаления ключа элемент сохраняет прежние
+ * ключ и последнее значение, и {@code setValue} бросает {@link IllegalStateException},
+ * даже если слот уже снова занят, в том числе тем же ключом.
+ *
+ * Таблица не наследует {@link MyHashMap}, т.к. не хранит узлов, а корзины
+ * и порог расширения считает так же, как {@link MyHashMap}.
+ * Допускает {@code null} в качестве ключа и значений.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MyPooledHashMap<K, V> extends AbstractMap<K, V> {
+
+    /** ключ свободного слота */
+    private static final Object FREE = new Object();
+
+    /** индекс первого слота цепочки или -1 */
+    private int[] buckets;
+    private int[] hashes;
+    /** индекс следующего слота цепочки или списка свободных, -1 в конце */
+    private int[] nexts;
+    /** поколение слота, увеличивается при его освобождении */
+    private int[] stamps;
+    private Object[] keys;
+    private Object[] vals;
+    /** сколько слотов с начала массивов когда-либо было занято */
+    private int used;
+    private int free = -1;
+    private int freeCount;
+    private int size;
+    /** до создания таблицы - ее начальная емкость, как в {@link MyHashMap} */
+    private int threshold;
+    private final float loadFactor;
+    private Set<Map.Entry<K,V>> entrySet;
+    private Set<K> keySet;
+    private Collection<V> values;
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     */
+    public MyPooledHashMap(int capacity, float loadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (capacity > MyHashMap.MAXIMUM_CAPACITY) capacity = MyHashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor");
+        }
+        this.loadFactor = loadFactor;
+        this.threshold = MyHashMap.tableSizeFor(capacity);
+    }
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     */
+    public MyPooledHashMap(int capacity) {
+        this(capacity, MyHashMap.LOAD_FACTOR);
+    }
+
+    public MyPooledHashMap() {
+        this.loadFactor = MyHashMap.LOAD_FACTOR;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        int i;
+        return (i = indexOf(key)) < 0 ? null : valueAt(i);
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] k = keys, v = vals; Object o;
+        for (int i = 0; i < used; ++i) {
+            if (k[i] != FREE && ((o = v[i]) == value || (value != null && value.equals(o))))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Занимает слот из списка свободных, если он не пуст, иначе следующий
+     * слот массивов. Если свободных слотов нет, то таблица и массивы
+     * слотов сначала расширяются.
+     */
+    public V put(K key, V value) {
+        int hash = MyHashMap.hash(key), i;
+        if ((i = indexOf(hash, key)) >= 0) {
+            V oldValue = valueAt(i);
+            vals[i] = value;
+            return oldValue;
+        }
+        if ((i = free) >= 0) {
+            free = nexts[i];
+            --freeCount;
+        }
+        else {
+            if (buckets == null || used == keys.length)
+                grow();
+            i = used++;
+        }
+        int b = hash & (buckets.length - 1);
+        hashes[i] = hash;
+        keys[i] = key;
+        vals[i] = value;
+        nexts[i] = buckets[b];
+        buckets[b] = i;
+        ++size;
+        return null;
+    }
+
+    /**
+     * Удаляет отображение для указанного ключа и возвращает освободившийся
+     * слот в список свободных.
+     *
+     * @param key ключ, отображение которого должно быть удалено из карты
+     * @return предыдущее значение, связанное с {@code key}, или {@code null}
+     */
+    public V remove(Object key) {
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return null;
+        V oldValue = valueAt(i);
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Заранее расширяет таблицу под итоговый размер.
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        presize(size + m.size());
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Не изменяет размер таблицы и массивов слотов. Обнуляет только корзины
+     * занятых когда-либо слотов и сами эти слоты, поколения занятых слотов
+     * увеличиваются, как при удалении.
+     */
+    public void clear() {
+        int[] tab;
+        if ((tab = buckets) == null || used == 0)
+            return;
+        int mask = tab.length - 1;
+        for (int i = 0; i < used; ++i) {
+            tab[hashes[i] & mask] = -1;
+            if (keys[i] != FREE)
+                ++stamps[i];
+        }
+        Arrays.fill(keys, 0, used, null);
+        Arrays.fill(vals, 0, used, null);
+        used = 0;
+        free = -1;
+        freeCount = 0;
+        size = 0;
+    }
+
+    private int indexOf(Object key) {
+        return indexOf(MyHashMap.hash(key), key);
+    }
+
+    /**
+     * Возвращает индекс слота ключа или -1, если ключа нет.
+     */
+    private int indexOf(int hash, Object key) {
+        int[] tab; Object k;
+        if ((tab = buckets) == null)
+            return -1;
+        for (int i = tab[hash & (tab.length - 1)]; i >= 0; i = nexts[i]) {
+            if (hashes[i] == hash && ((k = keys[i]) == key || (key != null && key.equals(k))))
+                return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int i) {
+        return (K) keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return (V) vals[i];
+    }
+
+    /**
+     * Исключает слот из цепочки его корзины и кладет в список свободных.
+     */
+    private void removeAt(int i) {
+        int[] tab = buckets, nx = nexts;
+        int b = hashes[i] & (tab.length - 1);
+        if (tab[b] == i)
+            tab[b] = nx[i];
+        else {
+            int p = tab[b];
+            while (nx[p] != i)
+                p = nx[p];
+            nx[p] = nx[i];
+        }
+        keys[i] = FREE;
+        vals[i] = null;
+        ++stamps[i];
+        nx[i] = free;
+        free = i;
+        ++freeCount;
+        --size;
+    }
+
+    private void presize(int s) {
+        while (s > threshold && (buckets == null || buckets.length < MyHashMap.MAXIMUM_CAPACITY))
+            grow();
+    }
+
+    /**
+     * Создает таблицу по начальной емкости или вдвое увеличивает ее, как
+     * {@link MyHashMap#resize()}, и доводит массивы слотов до нового
+     * {@code threshold}. Цепочки строятся заново по сохраненным хэшам,
+     * свободные слоты остаются в своем списке.
+     */
+    private void grow() {
+        int oldCap = buckets == null ? 0 : buckets.length, newCap;
+        if (oldCap == 0)
+            newCap = threshold > 0 ? Math.min(threshold, MyHashMap.MAXIMUM_CAPACITY) : MyHashMap.INITIAL_CAPACITY;
+        else
+            newCap = oldCap < MyHashMap.MAXIMUM_CAPACITY ? oldCap << 1 : oldCap;
+        float ft = newCap * loadFactor;
+        threshold = (newCap < MyHashMap.MAXIMUM_CAPACITY && ft < MyHashMap.MAXIMUM_CAPACITY)
+                ? (int) ft : Integer.MAX_VALUE;
+        int slots = threshold <= MyHashMap.MAXIMUM_CAPACITY
+                ? Math.max(threshold, used + 1) : used + (used >>> 1) + 1;
+        if (keys == null || slots > keys.length) {
+            hashes = hashes == null ? new int[slots] : Arrays.copyOf(hashes, slots);
+            nexts = nexts == null ? new int[slots] : Arrays.copyOf(nexts, slots);
+            stamps = stamps == null ? new int[slots] : Arrays.copyOf(stamps, slots);
+            keys = keys == null ? new Object[slots] : Arrays.copyOf(keys, slots);
+            vals = vals == null ? new Object[slots] : Arrays.copyOf(vals, slots);
+        }
+        if (newCap == oldCap)
+            return;
+        int[] tab = new int[newCap];
+        Arrays.fill(tab, -1);
+        int mask = newCap - 1;
+        for (int i = 0; i < used; ++i) {
+            if (keys[i] != FREE) {
+                int b = hashes[i] & mask;
+                nexts[i] = tab[b];
+                tab[b] = i;
+            }
+        }
+        buckets = tab;
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    int getFreeCount() {
+        return freeCount;
+    }
+
+    int getSlotCapacity() {
+        return keys == null ? 0 : keys.length;
+    }
+
+    /**
+     * Проходит занятые слоты по порядку. Удаление не сдвигает другие слоты,
+     * поэтому удалять можно прямо во время обхода.
+     */
+    abstract class SlotIterator {
+        int next = -1;
+        int current = -1;
+
+        SlotIterator() {
+            advance();
+        }
+
+        private void advance() {
+            while (++next < used && keys[next] == FREE);
+        }
+
+        public boolean hasNext() {
+            return next < used;
+        }
+
+        final int nextIndex() {
+            if (next >= used)
+                throw new NoSuchElementException();
+            current = next;
+            advance();
+            return current;
+        }
+
+        public void remove() {
+            if (current < 0 || current >= used || keys[current] == FREE)
+                throw new IllegalStateException();
+            removeAt(current);
+            current = -1;
+        }
+    }
+
+    final class SlotEntryIterator extends SlotIterator implements Iterator<Map.Entry<K,V>> {
+        public Map.Entry<K,V> next() { return new SlotEntry(nextIndex()); }
+    }
+
+    final class SlotKeyIterator extends SlotIterator implements Iterator<K> {
+        public K next() { return keyAt(nextIndex()); }
+    }
+
+    final class SlotValueIterator extends SlotIterator implements Iterator<V> {
+        public V next() { return valueAt(nextIndex()); }
+    }
+
+    /**
+     * Элемент, привязанный к слоту, пока поколение слота не изменилось.
+     */
+    final class SlotEntry implements Map.Entry<K,V> {
+        final int index;
+        final int stamp;
+        final K key;
+        V value;
+
+        SlotEntry(int index) {
+            this.index = index;
+            this.stamp = stamps[index];
+            this.key = keyAt(index);
+            this.value = valueAt(index);
+        }
+
+        private boolean attached() {
+            return stamps[index] == stamp;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            if (attached())
+                value = valueAt(index);
+            return value;
+        }
+
+        public V setValue(V value) {
+            if (!attached())
+                throw new IllegalStateException("Entry was removed from the map");
+            V oldValue = valueAt(index);
+            vals[index] = value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new PooledEntrySet()) : es;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) == null ? (keySet = new PooledKeySet()) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) == null ? (values = new PooledValues()) : vs;
+    }
+
+    final class PooledEntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() { return size; }
+
+        public void clear() { MyPooledHashMap.this.clear(); }
+
+        public Iterator<Map.Entry<K,V>> iterator() { return new SlotEntryIterator(); }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            int i;
+            return (i = indexOf(e.getKey())) >= 0 && Objects.equals(vals[i], e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            int i;
+            if ((i = indexOf(e.getKey())) < 0 || !Objects.equals(vals[i], e.getValue()))
+                return false;
+            removeAt(i);
+            return true;
+        }
+    }
+
+    final class PooledKeySet extends AbstractSet<K> {
+        public int size() { return size; }
+
+        public void clear() { MyPooledHashMap.this.clear(); }
+
+        public Iterator<K> iterator() { return new SlotKeyIterator(); }
+
+        public boolean contains(Object o) { return containsKey(o); }
+
+        public boolean remove(Object key) {
+            int i;
+            if ((i = indexOf(key)) < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+    }
+
+    final class PooledValues extends AbstractCollection<V> {
+        public int size() { return size; }
+
+        public void clear() { MyPooledHashMap.this.clear(); }
+
+        public Iterator<V> iterator() { return new SlotValueIterator(); }
+
+        public boolean contains(Object o) { return containsValue(o); }
+    }
+}
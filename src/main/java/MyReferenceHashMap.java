@@ -0,0 +1,450 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Хэш таблица, которая хранит ключи через {@link WeakReference} или
+ * {@link SoftReference}, поэтому не мешает сборщику мусора удалить ключ,
+ * на который больше нет сильных ссылок. Использует ту же структуру, что и
+ * {@link MyHashMap}: таблицу размером степень двойки и цепочки для коллизий.
+ *
+ * Ссылки на очищенные ключи попадают в {@link ReferenceQueue}. Каждая вставка
+ * и каждый поиск удаляют из таблицы не больше {@link #EXPUNGE_BATCH} таких
+ * элементов, поэтому очистка распределяется по операциям и не требует
+ * полного обхода таблицы. {@link #size()} и итераторы забирают из очереди
+ * все накопившиеся ссылки.
+ *
+ * Итератор по элементам возвращает элементы, которые хранят сильную ссылку
+ * на ключ: пока вызывающий код держит такой элемент, его ключ не будет удален
+ * сборщиком мусора, и {@code getKey()} не вернет {@code null} вместо ключа.
+ * Кроме того, итератор сам держит сильные ссылки на следующий ключ (от
+ * {@code hasNext} до {@code next}) и на последний выданный ключ (до следующего
+ * вызова {@code next}), как {@link WeakHashMap}.
+ *
+ * Допускает {@code null} в качестве ключа и значений.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MyReferenceHashMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Тип ссылки, через которую хранятся ключи.
+     */
+    public enum ReferenceType {
+        /** ключ удаляется, как только на него не остается сильных ссылок */
+        WEAK,
+        /** ключ удаляется только при нехватке памяти */
+        SOFT
+    }
+
+    static final int EXPUNGE_BATCH = 16;
+
+    private static final Object NULL_KEY = new Object();
+
+    private RefNode<K, V>[] table;
+    private Set<Map.Entry<K, V>> entrySet;
+    private int size;
+    private int threshold;
+    final float loadFactor;
+    final ReferenceType referenceType;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     * @param referenceType тип ссылок на ключи
+     */
+    public MyReferenceHashMap(int capacity, float loadFactor, ReferenceType referenceType) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (capacity > MyHashMap.MAXIMUM_CAPACITY) capacity = MyHashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor");
+        }
+        this.loadFactor = loadFactor;
+        this.threshold = MyHashMap.tableSizeFor(capacity);
+        this.referenceType = Objects.requireNonNull(referenceType);
+    }
+
+    /**
+     * Создает карту с коэффициентом загрузки по умолчанию (0.75).
+     * @param referenceType тип ссылок на ключи
+     */
+    public MyReferenceHashMap(ReferenceType referenceType) {
+        this.loadFactor = MyHashMap.LOAD_FACTOR;
+        this.referenceType = Objects.requireNonNull(referenceType);
+    }
+
+    /**
+     * Создает карту со слабыми ключами и коэффициентом загрузки по умолчанию (0.75).
+     */
+    public MyReferenceHashMap() {
+        this(ReferenceType.WEAK);
+    }
+
+    /**
+     * Ссылка на ключ, которая знает свой узел, чтобы при появлении в очереди
+     * узел можно было найти без обхода таблицы.
+     */
+    interface KeyReference {
+        RefNode<?, ?> node();
+    }
+
+    static final class WeakKey extends WeakReference<Object> implements KeyReference {
+        final RefNode<?, ?> node;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue, RefNode<?, ?> node) {
+            super(key, queue);
+            this.node = node;
+        }
+
+        public RefNode<?, ?> node() {
+            return node;
+        }
+    }
+
+    static final class SoftKey extends SoftReference<Object> implements KeyReference {
+        final RefNode<?, ?> node;
+
+        SoftKey(Object key, ReferenceQueue<Object> queue, RefNode<?, ?> node) {
+            super(key, queue);
+            this.node = node;
+        }
+
+        public RefNode<?, ?> node() {
+            return node;
+        }
+    }
+
+    static final class RefNode<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final Reference<Object> keyRef;
+        V value;
+        RefNode<K, V> next;
+
+        RefNode(Object maskedKey, V value, RefNode<K, V> next, int hash,
+                ReferenceType type, ReferenceQueue<Object> queue) {
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+            this.keyRef = (type == ReferenceType.WEAK)
+                    ? new WeakKey(maskedKey, queue, this)
+                    : new SoftKey(maskedKey, queue, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) unmaskNull(keyRef.get());
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return getKey() + "=" + value;
+        }
+    }
+
+    static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    static Object unmaskNull(Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+
+    /**
+     * Удаляет из таблицы не больше {@code limit} элементов, ключи которых
+     * уже были очищены сборщиком мусора.
+     *
+     * @param limit максимальное количество элементов для удаления
+     */
+    final void expungeStaleEntries(int limit) {
+        Reference<?> ref;
+        while (limit-- > 0 && (ref = queue.poll()) != null) {
+            RefNode<?, ?> stale = ((KeyReference) ref).node();
+            RefNode<K, V>[] tab; int i;
+            if ((tab = table) == null)
+                continue;
+            RefNode<K, V> e = tab[i = (tab.length - 1) & stale.hash], prev = null;
+            for (; e != null; prev = e, e = e.next) {
+                if (e == stale) {
+                    if (prev == null)
+                        tab[i] = e.next;
+                    else
+                        prev.next = e.next;
+                    e.value = null;
+                    --size;
+                    break;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        expungeStaleEntries(Integer.MAX_VALUE);
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public V get(Object key) {
+        RefNode<K, V> e;
+        return (e = getNode(key)) == null ? null : e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    final RefNode<K, V> getNode(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        RefNode<K, V>[] tab; RefNode<K, V> e; int n, hash;
+        Object k = maskNull(key);
+        if ((tab = table) != null && (n = tab.length) > 0) {
+            hash = MyHashMap.hash(k);
+            for (e = tab[(n - 1) & hash]; e != null; e = e.next) {
+                Object ek;
+                if (e.hash == hash && ((ek = e.keyRef.get()) == k || k.equals(ek)))
+                    return e;
+            }
+        }
+        return null;
+    }
+
+    public V put(K key, V value) {
+        return putVal(maskNull(key), value);
+    }
+
+    final V putVal(Object k, V value) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        RefNode<K, V>[] tab; RefNode<K, V> e; int n, i, hash = MyHashMap.hash(k);
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        for (e = tab[i = (n - 1) & hash]; e != null; e = e.next) {
+            Object ek;
+            if (e.hash == hash && ((ek = e.keyRef.get()) == k || k.equals(ek))) {
+                V oldValue = e.value;
+                e.value = value;
+                return oldValue;
+            }
+        }
+        tab[i] = new RefNode<>(k, value, tab[i], hash, referenceType, queue);
+        if (++size > threshold) resize();
+        return null;
+    }
+
+    public V remove(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        RefNode<K, V>[] tab; RefNode<K, V> e, prev = null; int n, i;
+        Object k = maskNull(key);
+        int hash = MyHashMap.hash(k);
+        if ((tab = table) == null || (n = tab.length) == 0)
+            return null;
+        for (e = tab[i = (n - 1) & hash]; e != null; prev = e, e = e.next) {
+            Object ek;
+            if (e.hash == hash && ((ek = e.keyRef.get()) == k || k.equals(ek))) {
+                if (prev == null)
+                    tab[i] = e.next;
+                else
+                    prev.next = e.next;
+                --size;
+                e.keyRef.clear();
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Не изменяет размер таблицы. Ставит во все ячейки таблицы значение {@code null}
+     * и очищает очередь ссылок.
+     */
+    public void clear() {
+        while (queue.poll() != null);
+        RefNode<K, V>[] tab;
+        if ((tab = table) != null) {
+            Arrays.fill(tab, null);
+            size = 0;
+        }
+        while (queue.poll() != null);
+    }
+
+    /**
+     * Создает таблицу или вдвое увеличивает ее размер. Элементы с уже очищенными
+     * ключами при переносе отбрасываются.
+     */
+    @SuppressWarnings("unchecked")
+    final RefNode<K, V>[] resize() {
+        RefNode<K, V>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MyHashMap.MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (threshold > 0) {
+            newCap = threshold;
+        }
+        else {
+            newCap = MyHashMap.INITIAL_CAPACITY;
+        }
+        threshold = (newCap >= MyHashMap.MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int) (newCap * loadFactor);
+        RefNode<K, V>[] newTab = (RefNode<K, V>[]) new RefNode[newCap];
+        table = newTab;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                RefNode<K, V> e, next;
+                for (e = oldTab[j]; e != null; e = next) {
+                    next = e.next;
+                    if (e.keyRef.get() == null) {
+                        e.value = null;
+                        --size;
+                        continue;
+                    }
+                    int idx = (newCap - 1) & e.hash;
+                    e.next = newTab[idx];
+                    newTab[idx] = e;
+                }
+                oldTab[j] = null;
+            }
+        }
+        return newTab;
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public int size() { return MyReferenceHashMap.this.size(); }
+
+        public void clear() { MyReferenceHashMap.this.clear(); }
+
+        public Iterator<Map.Entry<K, V>> iterator() { return new EntryIterator(); }
+    }
+
+    /**
+     * Итератор пропускает элементы с очищенными ключами. Между {@code hasNext}
+     * и {@code next} он удерживает сильную ссылку на следующий ключ, а после
+     * {@code next} - на выданный ключ до следующего вызова {@code next}.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final RefNode<K, V>[] tab;
+        int index;
+        RefNode<K, V> next;
+        Object nextKey;
+        RefNode<K, V> current;
+        Object currentKey;
+
+        EntryIterator() {
+            expungeStaleEntries(Integer.MAX_VALUE);
+            tab = table;
+        }
+
+        public boolean hasNext() {
+            if (tab == null)
+                return false;
+            while (nextKey == null) {
+                RefNode<K, V> e = (next == null) ? null : next.next;
+                while (e == null) {
+                    if (index >= tab.length)
+                        return false;
+                    e = tab[index++];
+                }
+                next = e;
+                nextKey = e.keyRef.get();
+            }
+            return true;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = next;
+            currentKey = nextKey;
+            nextKey = null;
+            return new StrongKeyEntry<>(current, currentKey);
+        }
+
+        public void remove() {
+            if (current == null)
+                throw new IllegalStateException();
+            MyReferenceHashMap.this.remove(unmaskNull(currentKey));
+            current = null;
+            currentKey = null;
+        }
+    }
+
+    /**
+     * Элемент, выданный итератором: держит сильную ссылку на ключ, а значение
+     * читает и пишет в узле таблицы.
+     */
+    static final class StrongKeyEntry<K, V> implements Map.Entry<K, V> {
+        final RefNode<K, V> node;
+        final Object maskedKey;
+
+        StrongKeyEntry(RefNode<K, V> node, Object maskedKey) {
+            this.node = node;
+            this.maskedKey = maskedKey;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) unmaskNull(maskedKey);
+        }
+
+        public V getValue() {
+            return node.value;
+        }
+
+        public V setValue(V value) {
+            return node.setValue(value);
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(node.value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(node.value);
+        }
+
+        public String toString() {
+            return getKey() + "=" + node.value;
+        }
+    }
+
+    RefNode<K, V>[] getTable() {
+        return table;
+    }
+}
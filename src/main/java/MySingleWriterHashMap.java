@@ -0,0 +1,314 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Хэш таблица для одного пишущего потока и любого количества читающих.
+ * Использует ту же структуру, что и {@link MyHashMap}: таблицу размером
+ * степень двойки и цепочки для коллизий.
+ *
+ * Писатель публикует таблицу, головы цепочек, ссылки {@code next} и значения
+ * через запись с семантикой release ({@link VarHandle#setRelease}), а читатели
+ * читают их с семантикой acquire. Узел полностью создается до публикации,
+ * поэтому читатель никогда не видит недостроенный узел. Удаленный узел
+ * сохраняет свою ссылку {@code next}, поэтому читатель, стоящий на нем,
+ * продолжает обход цепочки.
+ *
+ * Только {@link #resize()} перестраивает цепочки на месте. На время
+ * перестройки писатель делает счетчик последовательности нечетным, а
+ * читатель после поиска сверяет счетчик с прочитанным до поиска значением
+ * и повторяет поиск, если они различаются. Чтение не берет блокировок и не
+ * использует CAS.
+ *
+ * Все изменяющие методы должны вызываться из одного потока.
+ *
+ * @param <K> тип ключей
+ * @param <V> тип хранимых значений
+ */
+public class MySingleWriterHashMap<K, V> {
+
+    private static final VarHandle TABLE;
+    private static final VarHandle SEQ;
+    private static final VarHandle SIZE;
+    private static final VarHandle BIN = MethodHandles.arrayElementVarHandle(SwNode[].class);
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            TABLE = l.findVarHandle(MySingleWriterHashMap.class, "table", SwNode[].class);
+            SEQ = l.findVarHandle(MySingleWriterHashMap.class, "seq", int.class);
+            SIZE = l.findVarHandle(MySingleWriterHashMap.class, "size", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final Object NOT_FOUND = new Object();
+
+    private SwNode<K, V>[] table;
+    private int seq;
+    private int size;
+    private int threshold;
+    final float loadFactor;
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     */
+    public MySingleWriterHashMap(int capacity, float loadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (capacity > MyHashMap.MAXIMUM_CAPACITY) capacity = MyHashMap.MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor");
+        }
+        this.loadFactor = loadFactor;
+        this.threshold = MyHashMap.tableSizeFor(capacity);
+    }
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     */
+    public MySingleWriterHashMap(int capacity) {
+        this(capacity, MyHashMap.LOAD_FACTOR);
+    }
+
+    public MySingleWriterHashMap() {
+        this.loadFactor = MyHashMap.LOAD_FACTOR;
+    }
+
+    static final class SwNode<K, V> {
+        private static final VarHandle VALUE;
+        private static final VarHandle NEXT;
+
+        static {
+            try {
+                MethodHandles.Lookup l = MethodHandles.lookup();
+                VALUE = l.findVarHandle(SwNode.class, "value", Object.class);
+                NEXT = l.findVarHandle(SwNode.class, "next", SwNode.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final int hash;
+        final K key;
+        V value;
+        SwNode<K, V> next;
+
+        SwNode(int hash, K key, V value, SwNode<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @SuppressWarnings("unchecked")
+        V getValueAcquire() {
+            return (V) VALUE.getAcquire(this);
+        }
+
+        void setValueRelease(V v) {
+            VALUE.setRelease(this, v);
+        }
+
+        @SuppressWarnings("unchecked")
+        SwNode<K, V> getNextAcquire() {
+            return (SwNode<K, V>) NEXT.getAcquire(this);
+        }
+
+        void setNextRelease(SwNode<K, V> n) {
+            NEXT.setRelease(this, n);
+        }
+    }
+
+    /**
+     * Возвращает количество элементов. Может вызываться из любого потока.
+     * @return количество элементов
+     */
+    public int size() {
+        return (int) SIZE.getAcquire(this);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Возвращает значение для ключа. Может вызываться из любого потока,
+     * не блокируется; если во время поиска писатель расширял таблицу,
+     * поиск повторяется.
+     *
+     * @param key ключ
+     * @return значение или {@code null}, если ключа нет
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object v = find(key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    /**
+     * Может вызываться из любого потока.
+     */
+    public boolean containsKey(Object key) {
+        return find(key) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object find(Object key) {
+        int hash = MyHashMap.hash(key);
+        for (;;) {
+            int s = (int) SEQ.getAcquire(this);
+            if ((s & 1) == 0) {
+                Object v = NOT_FOUND;
+                SwNode<K, V>[] tab = (SwNode<K, V>[]) TABLE.getAcquire(this);
+                if (tab != null) {
+                    SwNode<K, V> e = (SwNode<K, V>) BIN.getAcquire(tab, (tab.length - 1) & hash);
+                    for (; e != null; e = e.getNextAcquire()) {
+                        if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                            v = e.getValueAcquire();
+                            break;
+                        }
+                    }
+                }
+                VarHandle.acquireFence();
+                if ((int) SEQ.getOpaque(this) == s)
+                    return v;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Связывает значение с ключом. Вызывается только из потока писателя.
+     *
+     * @param key ключ
+     * @param value значение
+     * @return предыдущее значение или {@code null}
+     */
+    public V put(K key, V value) {
+        int hash = MyHashMap.hash(key), n, i;
+        SwNode<K, V>[] tab; SwNode<K, V> e, last = null;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        for (e = tab[i = (n - 1) & hash]; e != null; last = e, e = e.next) {
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                V oldValue = e.value;
+                e.setValueRelease(value);
+                return oldValue;
+            }
+        }
+        SwNode<K, V> node = new SwNode<>(hash, key, value, null);
+        if (last == null)
+            BIN.setRelease(tab, i, node);
+        else
+            last.setNextRelease(node);
+        SIZE.setRelease(this, size + 1);
+        if (size > threshold) resize();
+        return null;
+    }
+
+    /**
+     * Удаляет ключ. Вызывается только из потока писателя.
+     *
+     * @param key ключ
+     * @return предыдущее значение или {@code null}
+     */
+    public V remove(Object key) {
+        int hash = MyHashMap.hash(key), n, i;
+        SwNode<K, V>[] tab; SwNode<K, V> e, prev = null;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            return null;
+        for (e = tab[i = (n - 1) & hash]; e != null; prev = e, e = e.next) {
+            if (e.hash == hash && (e.key == key || (key != null && key.equals(e.key)))) {
+                if (prev == null)
+                    BIN.setRelease(tab, i, e.next);
+                else
+                    prev.setNextRelease(e.next);
+                SIZE.setRelease(this, size - 1);
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Публикует новую пустую таблицу того же размера. Читатели, которые уже
+     * идут по старой таблице, закончат поиск по ней.
+     * Вызывается только из потока писателя.
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        SwNode<K, V>[] tab;
+        if ((tab = table) != null && size > 0) {
+            TABLE.setRelease(this, (SwNode<K, V>[]) new SwNode[tab.length]);
+            SIZE.setRelease(this, 0);
+        }
+    }
+
+    /**
+     * Создает таблицу или вдвое увеличивает ее размер, разделяя цепочки
+     * на младшую и старшую части, как {@link MyHashMap#resize()}. Цепочки
+     * перестраиваются на месте, поэтому на это время счетчик последовательности
+     * нечетный, и читатели повторяют поиск.
+     */
+    @SuppressWarnings("unchecked")
+    final SwNode<K, V>[] resize() {
+        SwNode<K, V>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MyHashMap.MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (threshold > 0) {
+            newCap = threshold;
+        }
+        else {
+            newCap = MyHashMap.INITIAL_CAPACITY;
+        }
+        threshold = (newCap >= MyHashMap.MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int) (newCap * loadFactor);
+        SwNode<K, V>[] newTab = (SwNode<K, V>[]) new SwNode[newCap];
+        if (oldTab == null) {
+            TABLE.setRelease(this, newTab);
+            return newTab;
+        }
+        int s = seq;
+        SEQ.setOpaque(this, s + 1);
+        VarHandle.storeStoreFence();
+        for (int j = 0; j < oldCap; ++j) {
+            SwNode<K, V> e, next;
+            SwNode<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+            for (e = oldTab[j]; e != null; e = next) {
+                next = e.next;
+                if ((e.hash & oldCap) == 0) {
+                    if (loTail == null) loHead = e; else loTail.next = e;
+                    loTail = e;
+                }
+                else {
+                    if (hiTail == null) hiHead = e; else hiTail.next = e;
+                    hiTail = e;
+                }
+            }
+            if (loTail != null) {
+                loTail.next = null;
+                newTab[j] = loHead;
+            }
+            if (hiTail != null) {
+                hiTail.next = null;
+                newTab[j + oldCap] = hiHead;
+            }
+        }
+        TABLE.setRelease(this, newTab);
+        SEQ.setRelease(this, s + 2);
+        return newTab;
+    }
+
+    SwNode<K, V>[] getTable() {
+        return table;
+    }
+}
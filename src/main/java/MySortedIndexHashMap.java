@@ -0,0 +1,328 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Хэш таблица с упорядоченным индексом по ключам. Узлы таблицы одновременно
+ * являются узлами списка с пропусками (skip list), упорядоченного заданным
+ * {@link Comparator}, поэтому поиск по ключу по-прежнему идет через таблицу
+ * за O(1), а запросы по диапазону ключей через {@link #subMap}, {@link #headMap}
+ * и {@link #tailMap} выполняются за O(log n + k).
+ *
+ * Компаратор должен быть согласован с {@code equals}: два ключа, которые
+ * компаратор считает равными, должны быть равны и по {@code equals}.
+ * Если компаратор не поддерживает {@code null}, то ключ {@code null} использовать нельзя.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MySortedIndexHashMap<K, V> extends MyHashMap<K, V> {
+
+    static final int MAX_LEVEL = 32;
+
+    final Comparator<? super K> comparator;
+    private final IndexedNode<K, V> head = new IndexedNode<>(null, null, 0, MAX_LEVEL);
+    private int level = 1;
+
+    /**
+     * @param capacity емкость после вставки первого элемента (доводится до степени двойки)
+     * @param loadFactor коэффициент загрузки
+     * @param comparator порядок ключей в индексе
+     */
+    public MySortedIndexHashMap(int capacity, float loadFactor, Comparator<? super K> comparator) {
+        super(capacity, loadFactor);
+        this.comparator = Objects.requireNonNull(comparator);
+    }
+
+    /**
+     * @param comparator порядок ключей в индексе
+     */
+    public MySortedIndexHashMap(Comparator<? super K> comparator) {
+        super();
+        this.comparator = Objects.requireNonNull(comparator);
+    }
+
+    /**
+     * Узел таблицы, который также хранит ссылки на следующие узлы
+     * на каждом уровне списка с пропусками.
+     */
+    static final class IndexedNode<K, V> extends Node<K, V> {
+        final IndexedNode<K, V>[] forward;
+
+        @SuppressWarnings("unchecked")
+        IndexedNode(K key, V value, int hash, int height) {
+            super(key, value, null, hash);
+            this.forward = (IndexedNode<K, V>[]) new IndexedNode[height];
+        }
+    }
+
+    /**
+     * Создает узел и сразу вставляет его в индекс. Вызывается из {@code putVal}
+     * только для ключа, которого еще нет в карте.
+     */
+    @Override
+    Node<K, V> newNode(int hash, K key, V value, Node<K, V> next) {
+        IndexedNode<K, V> x = new IndexedNode<>(key, value, hash, randomLevel());
+        x.next = next;
+        int height = x.forward.length;
+        if (height > level)
+            level = height;
+        IndexedNode<K, V> p = head, q;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((q = p.forward[i]) != null && comparator.compare(q.key, key) < 0)
+                p = q;
+            if (i < height) {
+                x.forward[i] = q;
+                p.forward[i] = x;
+            }
+        }
+        return x;
+    }
+
+    @Override
+    void afterNodeRemoval(Node<K, V> e) {
+        IndexedNode<K, V> x = (IndexedNode<K, V>) e, p = head, q;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((q = p.forward[i]) != null && q != x && comparator.compare(q.key, x.key) < 0)
+                p = q;
+            if (q == x)
+                p.forward[i] = x.forward[i];
+        }
+        while (level > 1 && head.forward[level - 1] == null)
+            --level;
+    }
+
+    /**
+     * Не изменяет размер таблицы. Ставит во все ячейки таблицы значение {@code null}
+     * и очищает индекс.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(head.forward, null);
+        level = 1;
+    }
+
+    /**
+     * Высота узла: каждый следующий уровень добавляется с вероятностью 1/2.
+     */
+    private static int randomLevel() {
+        int r = ThreadLocalRandom.current().nextInt();
+        int height = Integer.numberOfTrailingZeros(r | (1 << (MAX_LEVEL - 1))) + 1;
+        return Math.min(height, MAX_LEVEL);
+    }
+
+    /**
+     * Возвращает первый узел, ключ которого не меньше {@code key}
+     * (или больше, если {@code inclusive == false}).
+     */
+    final IndexedNode<K, V> ceilingNode(K key, boolean inclusive) {
+        IndexedNode<K, V> p = head, q;
+        for (int i = level - 1; i >= 0; --i) {
+            int c;
+            while ((q = p.forward[i]) != null &&
+                    ((c = comparator.compare(q.key, key)) < 0 || (c == 0 && !inclusive)))
+                p = q;
+        }
+        return p.forward[0];
+    }
+
+    /**
+     * Возвращает последний узел, ключ которого меньше {@code key}
+     * (или не больше, если {@code inclusive == true}); если {@code key}
+     * не задан, то последний узел индекса.
+     */
+    final IndexedNode<K, V> floorNode(K key, boolean hasKey, boolean inclusive) {
+        IndexedNode<K, V> p = head, q;
+        for (int i = level - 1; i >= 0; --i) {
+            int c;
+            while ((q = p.forward[i]) != null &&
+                    (!hasKey || (c = comparator.compare(q.key, key)) < 0 || (c == 0 && inclusive)))
+                p = q;
+        }
+        return p == head ? null : p;
+    }
+
+    /**
+     * Представление ключей в диапазоне [{@code fromKey}, {@code toKey}).
+     * @param fromKey нижняя граница, включительно
+     * @param toKey верхняя граница, не включительно
+     * @return упорядоченное представление части карты
+     */
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (comparator.compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return new RangeView(fromKey, true, toKey, true);
+    }
+
+    /**
+     * Представление ключей, строго меньших {@code toKey}.
+     * @param toKey верхняя граница, не включительно
+     * @return упорядоченное представление части карты
+     */
+    public SortedMap<K, V> headMap(K toKey) {
+        return new RangeView(null, false, toKey, true);
+    }
+
+    /**
+     * Представление ключей, не меньших {@code fromKey}.
+     * @param fromKey нижняя граница, включительно
+     * @return упорядоченное представление части карты
+     */
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new RangeView(fromKey, true, null, false);
+    }
+
+    /**
+     * Представление всей карты в порядке индекса.
+     * @return упорядоченное представление карты
+     */
+    public SortedMap<K, V> sortedView() {
+        return new RangeView(null, false, null, false);
+    }
+
+    /**
+     * Представление части карты в диапазоне [{@code lo}, {@code hi}).
+     * Поиск по ключу идет через таблицу, обход и границы через индекс.
+     * Изменения в представлении записываются в карту и наоборот.
+     */
+    final class RangeView extends AbstractMap<K, V> implements SortedMap<K, V> {
+        final K lo, hi;
+        final boolean hasLo, hasHi;
+        private Set<Map.Entry<K, V>> entries;
+
+        RangeView(K lo, boolean hasLo, K hi, boolean hasHi) {
+            this.lo = lo;
+            this.hasLo = hasLo;
+            this.hi = hi;
+            this.hasHi = hasHi;
+        }
+
+        boolean tooLow(Object key) {
+            @SuppressWarnings("unchecked") K k = (K) key;
+            return hasLo && comparator.compare(k, lo) < 0;
+        }
+
+        boolean tooHigh(Object key) {
+            @SuppressWarnings("unchecked") K k = (K) key;
+            return hasHi && comparator.compare(k, hi) >= 0;
+        }
+
+        boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        IndexedNode<K, V> firstNode() {
+            IndexedNode<K, V> e = hasLo ? ceilingNode(lo, true) : head.forward[0];
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        IndexedNode<K, V> lastNode() {
+            IndexedNode<K, V> e = floorNode(hi, hasHi, false);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        public V get(Object key) {
+            return inRange(key) ? MySortedIndexHashMap.this.get(key) : null;
+        }
+
+        public boolean containsKey(Object key) {
+            return inRange(key) && MySortedIndexHashMap.this.containsKey(key);
+        }
+
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return MySortedIndexHashMap.this.put(key, value);
+        }
+
+        public V remove(Object key) {
+            return inRange(key) ? MySortedIndexHashMap.this.remove(key) : null;
+        }
+
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if (tooLow(fromKey) || tooLow(toKey) || (hasHi &&
+                    (comparator.compare(fromKey, hi) > 0 || comparator.compare(toKey, hi) > 0)))
+                throw new IllegalArgumentException("key out of range");
+            return MySortedIndexHashMap.this.subMap(fromKey, toKey);
+        }
+
+        public SortedMap<K, V> headMap(K toKey) {
+            if (tooLow(toKey) || (hasHi && comparator.compare(toKey, hi) > 0))
+                throw new IllegalArgumentException("key out of range");
+            return new RangeView(lo, hasLo, toKey, true);
+        }
+
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if (!inRange(fromKey))
+                throw new IllegalArgumentException("key out of range");
+            return new RangeView(fromKey, true, hi, hasHi);
+        }
+
+        public K firstKey() {
+            IndexedNode<K, V> e;
+            if ((e = firstNode()) == null)
+                throw new NoSuchElementException();
+            return e.key;
+        }
+
+        public K lastKey() {
+            IndexedNode<K, V> e;
+            if ((e = lastNode()) == null)
+                throw new NoSuchElementException();
+            return e.key;
+        }
+
+        public Set<Map.Entry<K, V>> entrySet() {
+            Set<Map.Entry<K, V>> es;
+            return (es = entries) == null ? (entries = new RangeEntrySet()) : es;
+        }
+
+        final class RangeEntrySet extends AbstractSet<Map.Entry<K, V>> {
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new RangeIterator(firstNode());
+            }
+
+            public int size() {
+                int n = 0;
+                for (IndexedNode<K, V> e = firstNode(); e != null && !tooHigh(e.key); e = e.forward[0])
+                    ++n;
+                return n;
+            }
+        }
+
+        final class RangeIterator implements Iterator<Map.Entry<K, V>> {
+            IndexedNode<K, V> next;
+            IndexedNode<K, V> current;
+
+            RangeIterator(IndexedNode<K, V> first) {
+                next = first;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Map.Entry<K, V> next() {
+                IndexedNode<K, V> e;
+                if ((e = next) == null)
+                    throw new NoSuchElementException();
+                current = e;
+                next = e.forward[0];
+                if (next != null && tooHigh(next.key))
+                    next = null;
+                return e;
+            }
+
+            public void remove() {
+                if (current == null)
+                    throw new IllegalStateException();
+                MySortedIndexHashMap.this.remove(current.key);
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,504 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Хэш таблица для данных, которые не помещаются в куче. Ключи разбиты
+ * на {@code 2^partitionBits} разделов по старшим битам перемешанного
+ * {@link MyHashMap#hash(Object)}, каждый раздел хранит элементы в {@link MyHashMap}.
+ *
+ * Если количество элементов в памяти превышает {@code memoryBudget}, то
+ * разделы, к которым дольше всего не обращались, записываются в файлы
+ * в каталоге {@code dir} и удаляются из памяти. Поиск в выгруженном разделе
+ * идет через отображение файла в память ({@link MappedByteBuffer}) по
+ * записанной вместе с данными таблице с открытой адресацией, без загрузки
+ * раздела целиком.
+ *
+ * Изменения в выгруженном разделе не загружают его обратно: они копятся
+ * в памяти поверх файла (удаление хранится как отметка), а при следующей
+ * выгрузке раздела объединяются с файлом в новый файл. Поэтому при
+ * равномерной записи во все разделы карта не перечитывает файлы на каждой операции.
+ *
+ * Бюджет задается в элементах (включая отметки об удалении), а не в байтах,
+ * т.к. размер ключей и значений в куче заранее не известен. Раздел, с которым
+ * идет работа, не выгружается, даже если он один превышает бюджет.
+ *
+ * Java не позволяет явно закрыть отображение файла: оно освобождается, когда
+ * сборщик мусора соберет {@link MappedByteBuffer}. Поэтому при повторной
+ * выгрузке или очистке раздела ссылка на буфер сначала обнуляется, а затем
+ * файл удаляется, но адресное пространство и (в Linux) место на диске
+ * удаленного файла освобождаются только после сборки буфера. Если файл
+ * нельзя удалить, пока он отображен (Windows), то он удаляется при выходе из JVM.
+ *
+ * Как и {@link MyHashMap}, класс не потокобезопасен.
+ *
+ * @param <K> тип ключей
+ * @param <V> тип значений
+ */
+public class MySpillingHashMap<K, V> implements AutoCloseable {
+
+    static final int DEFAULT_PARTITION_BITS = 4;
+
+    static final int FILE_MAGIC = 0x4D485350;
+    static final int FILE_HEADER = 12;
+    static final int SLOT_SIZE = 8;
+
+    private static final Object NOT_FOUND = new Object();
+    private static final Object TOMBSTONE = new Object();
+
+    private final Path dir;
+    private final MyHashMapCodec<K, V> codec;
+    private final long memoryBudget;
+    private final int partitionBits;
+    private final Partition<K>[] partitions;
+    private long inMemory;
+    private long tick;
+    /** переиспользуется при каждом поиске в файле, чтобы не создавать потоков */
+    private final BufferDataInput probe = new BufferDataInput();
+
+    /**
+     * Раздел карты: элементы в памяти {@code map} поверх выгруженного файла
+     * {@code file}, отображенного в {@code mapped}. Если раздел не выгружался,
+     * то {@code mapped == null} и все элементы лежат в {@code map}.
+     * Значение {@code TOMBSTONE} в {@code map} означает, что ключ удален из файла.
+     */
+    static final class Partition<K> {
+        MyHashMap<K, Object> map = new MyHashMap<>();
+        Path file;
+        MappedByteBuffer mapped;
+        int size;
+        long lastAccess;
+    }
+
+    /**
+     * @param dir каталог для файлов выгруженных разделов
+     * @param keySerializer сериализатор ключей
+     * @param valueSerializer сериализатор значений
+     * @param memoryBudget максимальное количество элементов в памяти
+     * @throws IOException если каталог не удалось создать
+     */
+    public MySpillingHashMap(Path dir, MyHashMapCodec.Serializer<K> keySerializer,
+                             MyHashMapCodec.Serializer<V> valueSerializer,
+                             long memoryBudget) throws IOException {
+        this(dir, keySerializer, valueSerializer, memoryBudget, DEFAULT_PARTITION_BITS);
+    }
+
+    /**
+     * @param dir каталог для файлов выгруженных разделов
+     * @param keySerializer сериализатор ключей
+     * @param valueSerializer сериализатор значений
+     * @param memoryBudget максимальное количество элементов в памяти
+     * @param partitionBits количество старших битов хэша, выбирающих раздел (от 1 до 16)
+     * @throws IOException если каталог не удалось создать
+     */
+    @SuppressWarnings("unchecked")
+    public MySpillingHashMap(Path dir, MyHashMapCodec.Serializer<K> keySerializer,
+                             MyHashMapCodec.Serializer<V> valueSerializer,
+                             long memoryBudget, int partitionBits) throws IOException {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("memoryBudget < 0");
+        if (partitionBits < 1 || partitionBits > 16)
+            throw new IllegalArgumentException("Illegal partitionBits");
+        this.dir = Objects.requireNonNull(dir);
+        this.codec = new MyHashMapCodec<>(keySerializer, valueSerializer);
+        this.memoryBudget = memoryBudget;
+        this.partitionBits = partitionBits;
+        this.partitions = (Partition<K>[]) new Partition[1 << partitionBits];
+        for (int i = 0; i < partitions.length; ++i)
+            partitions[i] = new Partition<>();
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * Выбирает раздел по старшим битам хэша, предварительно умноженного на
+     * 0x9E3779B9: у небольших целых ключей старшие биты самого хэша нулевые,
+     * и без перемешивания все они попали бы в один раздел.
+     */
+    private Partition<K> partitionFor(int hash) {
+        Partition<K> p = partitions[(hash * 0x9E3779B9) >>> (32 - partitionBits)];
+        p.lastAccess = ++tick;
+        return p;
+    }
+
+    public int size() {
+        long n = 0;
+        for (Partition<K> p : partitions)
+            n += p.size;
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        for (Partition<K> p : partitions) {
+            if (p.size > 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ищет ключ сначала в памяти раздела, затем в его файле.
+     *
+     * @return значение или {@code NOT_FOUND}
+     */
+    private Object find(Partition<K> p, int hash, Object key) {
+        Node<K, Object> e;
+        if ((e = p.map.getNode(key)) != null)
+            return e.value == TOMBSTONE ? NOT_FOUND : e.value;
+        return p.mapped == null ? NOT_FOUND : lookupSpilled(p, hash, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = MyHashMap.hash(key);
+        Object v = find(partitionFor(hash), hash, key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    public boolean containsKey(Object key) {
+        int hash = MyHashMap.hash(key);
+        return find(partitionFor(hash), hash, key) != NOT_FOUND;
+    }
+
+    /**
+     * Связывает значение с ключом. Если раздел выгружен, то значение
+     * записывается в память поверх файла.
+     *
+     * @throws UncheckedIOException при ошибке записи файлов разделов
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int hash = MyHashMap.hash(key);
+        Partition<K> p = partitionFor(hash);
+        Object old = find(p, hash, key);
+        int before = p.map.size();
+        p.map.putVal(hash, key, value);
+        inMemory += p.map.size() - before;
+        if (old == NOT_FOUND)
+            ++p.size;
+        enforceBudget(p);
+        return old == NOT_FOUND ? null : (V) old;
+    }
+
+    /**
+     * Удаляет ключ. Если ключ есть в файле выгруженного раздела,
+     * то в памяти остается отметка об удалении.
+     *
+     * @throws UncheckedIOException при ошибке записи файлов разделов
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int hash = MyHashMap.hash(key);
+        Partition<K> p = partitionFor(hash);
+        Object old = find(p, hash, key);
+        if (old == NOT_FOUND)
+            return null;
+        --p.size;
+        if (p.mapped != null && lookupSpilled(p, hash, key) != NOT_FOUND) {
+            int before = p.map.size();
+            p.map.putVal(hash, (K) key, TOMBSTONE);
+            inMemory += p.map.size() - before;
+            enforceBudget(p);
+        }
+        else {
+            p.map.removeNode(hash, key, null);
+            --inMemory;
+        }
+        return (V) old;
+    }
+
+    /**
+     * Удаляет все элементы и файлы выгруженных разделов.
+     */
+    public void clear() {
+        for (Partition<K> p : partitions) {
+            dropFile(p);
+            p.map = new MyHashMap<>();
+            p.size = 0;
+        }
+        inMemory = 0;
+    }
+
+    /**
+     * Удаляет файлы выгруженных разделов.
+     */
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Возвращает количество разделов, у которых есть файл на диске.
+     * @return количество выгруженных разделов
+     */
+    public int spilledPartitionCount() {
+        int n = 0;
+        for (Partition<K> p : partitions) {
+            if (p.mapped != null)
+                ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Выгружает самые давно использованные разделы, пока элементов в памяти
+     * больше бюджета. Раздел {@code current} не выгружается.
+     */
+    private void enforceBudget(Partition<K> current) {
+        while (inMemory > memoryBudget) {
+            Partition<K> victim = null;
+            for (Partition<K> p : partitions) {
+                if (p != current && p.map.size() > 0 &&
+                        (victim == null || p.lastAccess < victim.lastAccess))
+                    victim = p;
+            }
+            if (victim == null)
+                return;
+            spill(victim);
+        }
+    }
+
+    /**
+     * Записывает раздел в новый файл: заголовок, таблицу слотов (хэш и смещение
+     * элемента, 0 означает пустой слот) и данные элементов в формате
+     * {@link MyHashMapCodec}. Элементы старого файла, которые не перекрыты
+     * элементами в памяти, переписываются в новый файл. Затем новый файл
+     * отображается в память, а старый удаляется.
+     */
+    @SuppressWarnings("unchecked")
+    private void spill(Partition<K> p) {
+        MyHashMap<K, Object> map = p.map;
+        int count = p.size;
+        int slotCount = MyHashMap.tableSizeFor(Math.max(count << 1, 2));
+        int dataStart = FILE_HEADER + slotCount * SLOT_SIZE;
+        int[] slotHashes = new int[slotCount];
+        int[] slotOffsets = new int[slotCount];
+        try {
+            Path file = Files.createTempFile(dir, "partition-", ".bin");
+            MappedByteBuffer mapped;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ch.position(dataStart);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+                int written = 0;
+                if (p.mapped != null) {
+                    MappedByteBuffer old = p.mapped;
+                    BufferDataInput in = new BufferDataInput().reset(old, FILE_HEADER + old.getInt(8) * SLOT_SIZE);
+                    for (int i = p.mapped.getInt(4); i > 0; --i) {
+                        int flags = in.readUnsignedByte();
+                        K key = (flags & MyHashMapCodec.NULL_KEY) != 0 ? null : codec.keySerializer.read(in);
+                        V value = (flags & MyHashMapCodec.NULL_VALUE) != 0 ? null : codec.valueSerializer.read(in);
+                        if (map.getNode(key) == null) {
+                            writeSlot(out, dataStart, MyHashMap.hash(key), slotHashes, slotOffsets);
+                            codec.writeEntry(out, key, value);
+                            ++written;
+                        }
+                    }
+                }
+                Node<K, Object>[] tab = map.getTable();
+                for (Node<K, Object> e : tab) {
+                    for (; e != null; e = e.next) {
+                        if (e.value == TOMBSTONE)
+                            continue;
+                        writeSlot(out, dataStart, e.hash, slotHashes, slotOffsets);
+                        codec.writeEntry(out, e.key, (V) e.value);
+                        ++written;
+                    }
+                }
+                out.flush();
+                if (written != count)
+                    throw new IllegalStateException("Partition size mismatch");
+                ByteBuffer index = ByteBuffer.allocate(dataStart);
+                index.putInt(FILE_MAGIC).putInt(count).putInt(slotCount);
+                for (int i = 0; i < slotCount; ++i)
+                    index.putInt(slotHashes[i]).putInt(slotOffsets[i]);
+                index.flip();
+                long pos = 0;
+                while (index.hasRemaining())
+                    pos += ch.write(index, pos);
+                mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            dropFile(p);
+            p.file = file;
+            p.mapped = mapped;
+            inMemory -= map.size();
+            p.map = new MyHashMap<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Занимает слот для элемента, который будет записан следующим.
+     */
+    private static void writeSlot(DataOutputStream out, int dataStart, int hash,
+                                  int[] slotHashes, int[] slotOffsets) throws IOException {
+        long offset = (long) dataStart + out.size();
+        if (offset >= Integer.MAX_VALUE)
+            throw new IOException("Partition is too large, increase partitionBits");
+        int mask = slotHashes.length - 1;
+        int i = hash & mask;
+        while (slotOffsets[i] != 0)
+            i = (i + 1) & mask;
+        slotHashes[i] = hash;
+        slotOffsets[i] = (int) offset;
+    }
+
+    /**
+     * Забывает отображение раздела и удаляет его файл. Само отображение
+     * освобождается позже, при сборке буфера.
+     */
+    private void dropFile(Partition<K> p) {
+        Path file;
+        if ((file = p.file) == null)
+            return;
+        p.file = null;
+        p.mapped = null;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Ищет ключ в файле выгруженного раздела по таблице слотов.
+     *
+     * @return значение или {@code NOT_FOUND}
+     */
+    private Object lookupSpilled(Partition<K> p, int hash, Object key) {
+        MappedByteBuffer buf = p.mapped;
+        int mask = buf.getInt(8) - 1;
+        BufferDataInput in = probe;
+        try {
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int slot = FILE_HEADER + i * SLOT_SIZE;
+                int offset = buf.getInt(slot + 4);
+                if (offset == 0)
+                    return NOT_FOUND;
+                if (buf.getInt(slot) != hash)
+                    continue;
+                in.reset(buf, offset);
+                int flags = in.readUnsignedByte();
+                K k = (flags & MyHashMapCodec.NULL_KEY) != 0 ? null : codec.keySerializer.read(in);
+                if (Objects.equals(k, key))
+                    return (flags & MyHashMapCodec.NULL_VALUE) != 0 ? null : codec.valueSerializer.read(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * {@link DataInput} поверх буфера с собственной позицией: читает абсолютными
+     * методами буфера, поэтому не меняет его позицию и не требует ни
+     * {@code duplicate()}, ни промежуточных потоков.
+     */
+    static final class BufferDataInput implements DataInput {
+        private ByteBuffer buf;
+        private int pos;
+
+        BufferDataInput reset(ByteBuffer buf, int position) {
+            this.buf = buf;
+            this.pos = position;
+            return this;
+        }
+
+        private int advance(int n) throws EOFException {
+            int p = pos;
+            if (n > buf.limit() - p)
+                throw new EOFException();
+            pos = p + n;
+            return p;
+        }
+
+        public void readFully(byte[] b) throws IOException {
+            readFully(b, 0, b.length);
+        }
+
+        public void readFully(byte[] b, int off, int len) throws IOException {
+            buf.get(advance(len), b, off, len);
+        }
+
+        public int skipBytes(int n) {
+            int k = Math.max(0, Math.min(n, buf.limit() - pos));
+            pos += k;
+            return k;
+        }
+
+        public boolean readBoolean() throws IOException {
+            return buf.get(advance(1)) != 0;
+        }
+
+        public byte readByte() throws IOException {
+            return buf.get(advance(1));
+        }
+
+        public int readUnsignedByte() throws IOException {
+            return buf.get(advance(1)) & 0xFF;
+        }
+
+        public short readShort() throws IOException {
+            return buf.getShort(advance(2));
+        }
+
+        public int readUnsignedShort() throws IOException {
+            return buf.getShort(advance(2)) & 0xFFFF;
+        }
+
+        public char readChar() throws IOException {
+            return buf.getChar(advance(2));
+        }
+
+        public int readInt() throws IOException {
+            return buf.getInt(advance(4));
+        }
+
+        public long readLong() throws IOException {
+            return buf.getLong(advance(8));
+        }
+
+        public float readFloat() throws IOException {
+            return buf.getFloat(advance(4));
+        }
+
+        public double readDouble() throws IOException {
+            return buf.getDouble(advance(8));
+        }
+
+        /**
+         * Читает байты до {@code \n}, {@code \r}, {@code \r\n} или конца
+         * буфера, каждый байт становится символом, как в {@link DataInputStream#readLine()}.
+         *
+         * @return строка без разделителя или {@code null}, если буфер уже прочитан
+         */
+        public String readLine() {
+            int limit = buf.limit(), start = pos;
+            if (start >= limit)
+                return null;
+            StringBuilder sb = new StringBuilder();
+            int p = start;
+            for (; p < limit; ++p) {
+                int c = buf.get(p) & 0xFF;
+                if (c == '\n')
+                    break;
+                if (c == '\r') {
+                    if (p + 1 < limit && buf.get(p + 1) == '\n')
+                        ++p;
+                    break;
+                }
+                sb.append((char) c);
+            }
+            pos = Math.min(p + 1, limit);
+            return sb.toString();
+        }
+
+        public String readUTF() throws IOException {
+            return DataInputStream.readUTF(this);
+        }
+    }
+}
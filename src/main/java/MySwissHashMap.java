@@ -0,0 +1,396 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Хэш таблица с открытой адресацией в стиле SwissTable.
+ *
+ * Слоты разбиты на группы по {@link #GROUP_SIZE}. Для каждого слота хранится
+ * управляющий байт: {@link #EMPTY}, {@link #DELETED} или 7 бит хэша ключа (H2),
+ * остальные биты хэша (H1) выбирают первую группу. Поиск сравнивает H2 сразу
+ * со всеми байтами группы, читая ее как два {@code long} (SWAR), и сравнивает
+ * ключи только в слотах с совпавшим H2. Поэтому промах обычно не трогает
+ * ни одного ключа, в отличие от прохода по цепочке в {@link MyHashMap#getNode}.
+ * Поиск останавливается на первой группе, в которой есть пустой слот,
+ * группы перебираются с шагом 1, 2, 3... (треугольные числа), что при числе
+ * групп степени двойки обходит все группы.
+ *
+ * Ключи и значения хранятся поочередно в одном массиве {@code slots}, таблица
+ * заполняется не больше чем на 7/8. Хэш ключа - {@link MyHashMap#hash(Object)},
+ * перемешанный умножением, чтобы у последовательных ключей различались и H1, и H2.
+ *
+ * Допускает {@code null} в качестве ключа и значений.
+ *
+ * @param <K> тип ключей, хранящихся в хэш таблице
+ * @param <V> тип хранимых значений
+ */
+public class MySwissHashMap<K, V> extends AbstractMap<K, V> {
+
+    static final int GROUP_SIZE = 16;
+    /** наибольшее количество слотов: на каждый слот приходится два элемента {@code slots} */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+    static final byte EMPTY = (byte) 0x80;
+    static final byte DELETED = (byte) 0xFE;
+
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+    private static final VarHandle WORD =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final Object NULL_KEY = new Object();
+
+    private byte[] ctrl;
+    private Object[] slots;
+    private Set<Map.Entry<K, V>> entrySet;
+    private int size;
+    /** сколько еще пустых слотов можно занять до перестроения */
+    private int growthLeft;
+    private final int initialCapacity;
+
+    /**
+     * @param capacity количество элементов, которое помещается без перестроения
+     */
+    public MySwissHashMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        this.initialCapacity = capacityFor(Math.min(capacity, maxLoad(MAXIMUM_CAPACITY)));
+    }
+
+    public MySwissHashMap() {
+        this.initialCapacity = GROUP_SIZE;
+    }
+
+    /**
+     * Количество слотов (степень двойки, не меньше группы), при котором
+     * {@code size} элементов занимают не больше 7/8 таблицы.
+     */
+    static int capacityFor(int size) {
+        return Math.max(MyHashMap.tableSizeFor(size + (size >>> 3) + 1), GROUP_SIZE);
+    }
+
+    static int spread(Object key) {
+        return MyHashMap.hash(key) * 0x9E3779B9;
+    }
+
+    static int h2(int h) {
+        return h >>> 25;
+    }
+
+    /**
+     * Биты старшего разряда байтов {@code w}, равных {@code h2}. Возможны
+     * ложные совпадения сразу после настоящего, они отсеиваются сравнением ключей;
+     * пустые и удаленные слоты не совпадают никогда.
+     */
+    static long matchByte(long w, int h2) {
+        long x = w ^ (LSB * h2);
+        return (x - LSB) & ~x & MSB;
+    }
+
+    /**
+     * Биты старшего разряда байтов {@code w}, равных {@link #EMPTY}: у него,
+     * в отличие от {@link #DELETED}, сброшен первый бит.
+     */
+    static long matchEmpty(long w) {
+        return w & ~(w << 6) & MSB;
+    }
+
+    /**
+     * Биты старшего разряда байтов {@code w}, равных {@link #EMPTY} или {@link #DELETED}.
+     */
+    static long matchFree(long w) {
+        return w & MSB;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return (i = find(key)) < 0 ? null : (V) slots[(i << 1) + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Возвращает индекс слота ключа или -1.
+     */
+    final int find(Object key) {
+        byte[] c;
+        if ((c = ctrl) == null)
+            return -1;
+        Object k = key == null ? NULL_KEY : key;
+        int h = spread(key), h2 = h2(h), mask = (c.length >>> 4) - 1;
+        Object[] s = slots;
+        for (int g = h & mask, step = 0; ; g = (g + ++step) & mask) {
+            int base = g << 4;
+            long w0 = (long) WORD.get(c, base), w1 = (long) WORD.get(c, base + 8);
+            for (long m = matchByte(w0, h2); m != 0; m &= m - 1) {
+                int i = base + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object o = s[i << 1];
+                if (o == k || k.equals(o))
+                    return i;
+            }
+            for (long m = matchByte(w1, h2); m != 0; m &= m - 1) {
+                int i = base + 8 + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object o = s[i << 1];
+                if (o == k || k.equals(o))
+                    return i;
+            }
+            if ((matchEmpty(w0) | matchEmpty(w1)) != 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Возвращает индекс первого пустого или удаленного слота на пути поиска хэша.
+     */
+    private static int findFree(byte[] c, int h) {
+        int mask = (c.length >>> 4) - 1;
+        for (int g = h & mask, step = 0; ; g = (g + ++step) & mask) {
+            int base = g << 4;
+            long m;
+            if ((m = matchFree((long) WORD.get(c, base))) != 0)
+                return base + (Long.numberOfTrailingZeros(m) >>> 3);
+            if ((m = matchFree((long) WORD.get(c, base + 8))) != 0)
+                return base + 8 + (Long.numberOfTrailingZeros(m) >>> 3);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int i;
+        if ((i = find(key)) >= 0) {
+            V oldValue = (V) slots[(i << 1) + 1];
+            slots[(i << 1) + 1] = value;
+            return oldValue;
+        }
+        int h = spread(key);
+        if (ctrl == null)
+            rehash(initialCapacity);
+        i = findFree(ctrl, h);
+        if (ctrl[i] == EMPTY && growthLeft == 0) {
+            rehash(growCapacity(size, ctrl.length));
+            i = findFree(ctrl, h);
+        }
+        insertAt(i, h, key == null ? NULL_KEY : key, value);
+        return null;
+    }
+
+    private void insertAt(int i, int h, Object k, Object value) {
+        if (ctrl[i] == EMPTY)
+            --growthLeft;
+        ctrl[i] = (byte) h2(h);
+        slots[i << 1] = k;
+        slots[(i << 1) + 1] = value;
+        ++size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i;
+        if ((i = find(key)) < 0)
+            return null;
+        V oldValue = (V) slots[(i << 1) + 1];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Освобождает слот. Если в группе слота есть пустой слот, то ни один поиск
+     * не проходит эту группу насквозь, поэтому слот снова становится пустым,
+     * иначе помечается удаленным.
+     */
+    final void removeAt(int i) {
+        byte[] c = ctrl;
+        int base = i & -GROUP_SIZE;
+        if ((matchEmpty((long) WORD.get(c, base)) | matchEmpty((long) WORD.get(c, base + 8))) != 0) {
+            c[i] = EMPTY;
+            ++growthLeft;
+        }
+        else {
+            c[i] = DELETED;
+        }
+        slots[i << 1] = null;
+        slots[(i << 1) + 1] = null;
+        --size;
+    }
+
+    /**
+     * Не изменяет размер таблицы: помечает все слоты пустыми.
+     */
+    public void clear() {
+        if (ctrl != null && size > 0) {
+            Arrays.fill(ctrl, EMPTY);
+            Arrays.fill(slots, null);
+            size = 0;
+            growthLeft = maxLoad(ctrl.length);
+        }
+    }
+
+    private static int maxLoad(int capacity) {
+        return capacity - (capacity >>> 3);
+    }
+
+    /**
+     * Количество слотов для перестроения заполненной таблицы: вдвое больше, если
+     * элементы занимают больше половины слотов, иначе прежнее, чтобы избавиться
+     * от удаленных слотов. Таблица из {@link #MAXIMUM_CAPACITY} слотов не растет
+     * и перестраивается, только пока в ней есть удаленные слоты.
+     *
+     * @throws IllegalStateException если таблица наибольшего размера заполнена
+     */
+    static int growCapacity(int size, int capacity) {
+        if (size + 1 <= capacity >>> 1)
+            return capacity;
+        if (capacity < MAXIMUM_CAPACITY)
+            return capacity << 1;
+        if (size < maxLoad(capacity))
+            return capacity;
+        throw new IllegalStateException("Table full: at most " + maxLoad(MAXIMUM_CAPACITY) + " elements");
+    }
+
+    /**
+     * Переносит элементы в таблицу из {@code newCap} слотов. Вызывается и с
+     * прежним размером, чтобы избавиться от удаленных слотов, если они занимают
+     * больше половины таблицы.
+     */
+    private void rehash(int newCap) {
+        byte[] oldCtrl = ctrl;
+        Object[] oldSlots = slots;
+        byte[] c = new byte[newCap];
+        Arrays.fill(c, EMPTY);
+        ctrl = c;
+        slots = new Object[newCap << 1];
+        growthLeft = maxLoad(newCap);
+        size = 0;
+        if (oldCtrl != null) {
+            for (int i = 0; i < oldCtrl.length; ++i) {
+                if (oldCtrl[i] >= 0) {
+                    Object k = oldSlots[i << 1];
+                    int h = spread(k == NULL_KEY ? null : k);
+                    insertAt(findFree(c, h), h, k, oldSlots[(i << 1) + 1]);
+                }
+            }
+        }
+    }
+
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public int size() { return size; }
+
+        public void clear() { MySwissHashMap.this.clear(); }
+
+        public Iterator<Map.Entry<K, V>> iterator() { return new EntryIterator(); }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            int i;
+            return (i = find(e.getKey())) >= 0 && Objects.equals(slots[(i << 1) + 1], e.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (contains(o)) {
+                MySwissHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Проходит слоты по порядку. Удаление не сдвигает другие элементы,
+     * поэтому удалять можно прямо во время обхода.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        int next = -1;
+        int current = -1;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            byte[] c = ctrl;
+            int n = c == null ? 0 : c.length;
+            while (++next < n && c[next] < 0);
+        }
+
+        public boolean hasNext() {
+            return ctrl != null && next < ctrl.length;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = next;
+            advance();
+            return new SlotEntry(current);
+        }
+
+        public void remove() {
+            if (current < 0 || ctrl[current] < 0)
+                throw new IllegalStateException();
+            removeAt(current);
+            current = -1;
+        }
+    }
+
+    final class SlotEntry implements Map.Entry<K, V> {
+        final int index;
+        final K key;
+
+        @SuppressWarnings("unchecked")
+        SlotEntry(int index) {
+            Object k = slots[index << 1];
+            this.index = index;
+            this.key = (K) (k == NULL_KEY ? null : k);
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) slots[(index << 1) + 1];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            V oldValue = (V) slots[(index << 1) + 1];
+            slots[(index << 1) + 1] = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    byte[] getCtrl() {
+        return ctrl;
+    }
+}
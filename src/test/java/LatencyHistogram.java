@@ -0,0 +1,81 @@
+/**
+ * Гистограмма задержек в наносекундах по образцу HdrHistogram: значения
+ * до {@link #SUB_BUCKETS} хранятся точно, большие значения - в корзинах
+ * логарифмической шкалы, каждая степень двойки делится на {@code SUB_BUCKETS / 2}
+ * линейных частей. Относительная погрешность не превышает 1/64, запись
+ * значения - одно сложение без выделения памяти.
+ */
+final class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS >>> 1;
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(HALF);
+
+    private final long[] counts = new long[SUB_BUCKETS + (63 - SUB_BITS) * HALF];
+    private long total;
+    private long max;
+    private double sum;
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return value < 0 ? 0 : (int) value;
+        int e = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS + (e - 1) * HALF + (int) ((value >>> e) - HALF);
+    }
+
+    /**
+     * Наибольшее значение, которое попадает в корзину {@code index}.
+     */
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int e = (index - SUB_BUCKETS) / HALF + 1;
+        long mantissa = HALF + (index - SUB_BUCKETS) % HALF;
+        return ((mantissa + 1) << e) - 1;
+    }
+
+    void record(long value) {
+        ++counts[indexOf(value)];
+        ++total;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Значение, не меньше которого не больше {@code 100 - percentile} процентов записей.
+     * @param percentile процентиль от 0 до 100
+     * @return верхняя граница корзины процентиля, не больше максимума
+     */
+    long percentile(double percentile) {
+        if (total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            if ((seen += counts[i]) >= target)
+                return Math.min(highestEquivalent(i), max);
+        }
+        return max;
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] += other.counts[i];
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+}
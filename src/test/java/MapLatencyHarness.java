@@ -0,0 +1,437 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Нагрузочный стенд для измерения задержек отдельных операций карт.
+ *
+ * Для каждой карты и каждого режима ключей выполняет одну и ту же заранее
+ * сгенерированную последовательность операций {@code get}/{@code put}/{@code remove}
+ * (по умолчанию 90/9/1) и для каждого типа операции записывает:
+ * <ul>
+ *     <li>задержку каждой операции в {@link LatencyHistogram};</li>
+ *     <li>выделенную память через {@code ThreadMXBean#getCurrentThreadAllocatedBytes},
+ *     за вычетом расхода самого замера;</li>
+ *     <li>медленные операции (дольше {@code --slow-us}), которые затем сопоставляются
+ *     с паузами сборщика мусора из уведомлений {@link GarbageCollectorMXBean}.</li>
+ * </ul>
+ *
+ * Режимы ключей: {@code ZIPF} - карта заполнена всем пространством ключей, ключи
+ * операций распределены по Ципфу; {@code GROWING} - каждая вставка добавляет новый
+ * ключ, чтение и удаление выбирают ключ по Ципфу среди вставленных, чаще свежие.
+ *
+ * Отчет в формате Markdown пишется в стандартный вывод и, если задан {@code --out},
+ * в файл. Задержки и пропускная способность сравниваются с {@code java.util.HashMap}.
+ *
+ * Запуск после {@code mvn test-compile}:
+ * <pre>
+ * java -cp target/classes:target/test-classes MapLatencyHarness --ops=2000000 --maps=HashMap,MyHashMap
+ * </pre>
+ */
+final class MapLatencyHarness {
+
+    enum Op { GET, PUT, REMOVE }
+
+    enum KeyMode { ZIPF, GROWING }
+
+    static final String BASELINE = "HashMap";
+
+    static final class Config {
+        long warmupOps = 500_000;
+        long ops = 2_000_000;
+        int keys = 100_000;
+        double zipf = 0.99;
+        long seed = 42;
+        int getPercent = 90;
+        int putPercent = 9;
+        long slowNanos = 50_000;
+        List<String> maps = new ArrayList<>(variants().keySet());
+        List<KeyMode> modes = List.of(KeyMode.values());
+        Path out;
+
+        static Config parse(String[] args) {
+            Config c = new Config();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0)
+                    throw new IllegalArgumentException("Expected --name=value: " + arg);
+                String name = arg.substring(2, eq), value = arg.substring(eq + 1);
+                switch (name) {
+                    case "warmup" -> c.warmupOps = Long.parseLong(value);
+                    case "ops" -> c.ops = Long.parseLong(value);
+                    case "keys" -> c.keys = Integer.parseInt(value);
+                    case "zipf" -> c.zipf = Double.parseDouble(value);
+                    case "seed" -> c.seed = Long.parseLong(value);
+                    case "slow-us" -> c.slowNanos = Long.parseLong(value) * 1000;
+                    case "maps" -> c.maps = List.of(value.split(","));
+                    case "modes" -> c.modes = Arrays.stream(value.split(",")).map(KeyMode::valueOf).toList();
+                    case "out" -> c.out = Path.of(value);
+                    case "mix" -> {
+                        String[] p = value.split("/");
+                        if (p.length != 3 || Integer.parseInt(p[0]) + Integer.parseInt(p[1]) + Integer.parseInt(p[2]) != 100)
+                            throw new IllegalArgumentException("Expected get/put/remove summing to 100: " + value);
+                        c.getPercent = Integer.parseInt(p[0]);
+                        c.putPercent = Integer.parseInt(p[1]);
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            }
+            for (String m : c.maps) {
+                if (!variants().containsKey(m))
+                    throw new IllegalArgumentException("Unknown map: " + m + ", expected one of " + variants().keySet());
+            }
+            return c;
+        }
+
+        String mix() {
+            return getPercent + "/" + putPercent + "/" + (100 - getPercent - putPercent);
+        }
+    }
+
+    /**
+     * Карты, которые умеет сравнивать стенд, в порядке вывода.
+     */
+    static Map<String, Supplier<Map<Long, Long>>> variants() {
+        Map<String, Supplier<Map<Long, Long>>> v = new LinkedHashMap<>();
+        v.put(BASELINE, HashMap::new);
+        v.put("MyHashMap", MyHashMap::new);
+        v.put("MyPooledHashMap", MyPooledHashMap::new);
+        v.put("MyCompactHashMap", MyCompactHashMap::new);
+        v.put("MyFilteredHashMap", MyFilteredHashMap::new);
+        v.put("MySwissHashMap", MySwissHashMap::new);
+        v.put("MySortedIndexHashMap", () -> new MySortedIndexHashMap<>(Comparator.naturalOrder()));
+        return v;
+    }
+
+    /**
+     * Выбор ранга от 0 до {@code n - 1} с вероятностью, пропорциональной
+     * {@code 1 / (rank + 1)^s}, бинарным поиском по функции распределения.
+     */
+    static final class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; ++i)
+                cdf[i] = sum += 1.0 / Math.pow(i + 1, s);
+            for (int i = 0; i < n; ++i)
+                cdf[i] /= sum;
+        }
+
+        int next(SplittableRandom random) {
+            int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+        }
+    }
+
+    /**
+     * Заранее сгенерированная последовательность операций и ключей, одна на
+     * режим ключей, чтобы все карты получили одинаковую нагрузку, а генерация
+     * не попадала в замер.
+     */
+    static final class Workload {
+        final KeyMode mode;
+        final byte[] ops;
+        final int[] keys;
+        final int prefill;
+        final Long[] boxed;
+
+        Workload(Config c, KeyMode mode) {
+            this.mode = mode;
+            int n = Math.toIntExact(c.warmupOps + c.ops);
+            ops = new byte[n];
+            keys = new int[n];
+            SplittableRandom random = new SplittableRandom(c.seed);
+            ZipfSampler zipf = new ZipfSampler(c.keys, c.zipf);
+            prefill = mode == KeyMode.ZIPF ? c.keys : Math.max(c.keys / 100, 1);
+            int population = prefill;
+            for (int i = 0; i < n; ++i) {
+                int r = random.nextInt(100);
+                Op op = r < c.getPercent ? Op.GET : r < c.getPercent + c.putPercent ? Op.PUT : Op.REMOVE;
+                ops[i] = (byte) op.ordinal();
+                if (mode == KeyMode.ZIPF)
+                    keys[i] = zipf.next(random);
+                else if (op == Op.PUT)
+                    keys[i] = population++;
+                else
+                    keys[i] = population - 1 - zipf.next(random) % population;
+            }
+            boxed = new Long[population];
+            for (int i = 0; i < population; ++i)
+                boxed[i] = (long) i;
+        }
+    }
+
+    /**
+     * Паузы сборщика мусора из уведомлений {@link GarbageCollectorMXBean}.
+     * Время пауз - во времени работы JVM в миллисекундах.
+     */
+    static final class GcMonitor implements NotificationListener, AutoCloseable {
+        record Pause(String collector, String action, String cause, long startMs, long durationMs) { }
+
+        final List<Pause> pauses = Collections.synchronizedList(new ArrayList<>());
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+        GcMonitor() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener(this, null, null);
+                    emitters.add(emitter);
+                }
+            }
+        }
+
+        public void handleNotification(Notification n, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType()))
+                return;
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            // циклы конкурентных сборщиков не останавливают потоки приложения
+            if (info.getGcAction().toLowerCase(Locale.ROOT).contains("concurrent")
+                    || info.getGcName().toLowerCase(Locale.ROOT).contains("concurrent"))
+                return;
+            pauses.add(new Pause(info.getGcName(), info.getGcAction(), info.getGcCause(),
+                    info.getGcInfo().getStartTime(), info.getGcInfo().getDuration()));
+        }
+
+        List<Pause> snapshot() {
+            synchronized (pauses) {
+                return new ArrayList<>(pauses);
+            }
+        }
+
+        public void close() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Результаты одного прогона: карта и режим ключей.
+     */
+    static final class Result {
+        final String map;
+        final KeyMode mode;
+        final LatencyHistogram[] latency = new LatencyHistogram[Op.values().length];
+        final long[] allocated = new long[Op.values().length];
+        double allocOverhead;
+        long elapsedNanos;
+        int finalSize;
+        int gcPauses;
+        long gcPauseMs;
+        int slowOps;
+        int slowOpsInGc;
+
+        Result(String map, KeyMode mode) {
+            this.map = map;
+            this.mode = mode;
+            for (int i = 0; i < latency.length; ++i)
+                latency[i] = new LatencyHistogram();
+        }
+
+        long ops() {
+            long n = 0;
+            for (LatencyHistogram h : latency)
+                n += h.count();
+            return n;
+        }
+
+        double bytesPerOp(Op op) {
+            long n = latency[op.ordinal()].count();
+            return n == 0 ? 0 : Math.max(0.0, (double) allocated[op.ordinal()] / n - allocOverhead);
+        }
+
+        double opsPerSecond() {
+            return elapsedNanos == 0 ? 0 : ops() * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile long sink;
+
+    /**
+     * Средний расход памяти на пару чтений счетчика выделенной памяти без операции.
+     */
+    static double allocationOverhead() {
+        long total = 0;
+        int n = 100_000;
+        for (int i = 0; i < n; ++i) {
+            long a0 = THREADS.getCurrentThreadAllocatedBytes();
+            long a1 = THREADS.getCurrentThreadAllocatedBytes();
+            total += a1 - a0;
+        }
+        return (double) total / n;
+    }
+
+    static Result run(String name, Supplier<Map<Long, Long>> factory, Workload w, Config c,
+                      GcMonitor gc, double allocOverhead) {
+        Result result = new Result(name, w.mode);
+        result.allocOverhead = allocOverhead;
+        Map<Long, Long> map = factory.get();
+        for (int i = 0; i < w.prefill; ++i)
+            map.put(w.boxed[i], w.boxed[i]);
+        int warmup = (int) c.warmupOps;
+        long[] slowStart = new long[1024], slowEnd = new long[1024];
+        int slow = 0;
+        long acc = 0;
+        long runtimeBaseMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        long nanoBase = System.nanoTime();
+        long begin = 0;
+        for (int i = 0; i < w.ops.length; ++i) {
+            if (i == warmup)
+                begin = System.nanoTime();
+            Long key = w.boxed[w.keys[i]];
+            int op = w.ops[i];
+            long a0 = THREADS.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            switch (op) {
+                case 0 -> acc += map.get(key) == null ? 0 : 1;
+                case 1 -> map.put(key, key);
+                default -> map.remove(key);
+            }
+            long t1 = System.nanoTime();
+            long a1 = THREADS.getCurrentThreadAllocatedBytes();
+            if (i >= warmup) {
+                long d = t1 - t0;
+                result.latency[op].record(d);
+                result.allocated[op] += a1 - a0;
+                if (d >= c.slowNanos) {
+                    if (slow == slowStart.length) {
+                        slowStart = Arrays.copyOf(slowStart, slow << 1);
+                        slowEnd = Arrays.copyOf(slowEnd, slow << 1);
+                    }
+                    slowStart[slow] = t0;
+                    slowEnd[slow++] = t1;
+                }
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - begin;
+        result.finalSize = map.size();
+        sink = acc;
+        attributeGc(result, gc, slowStart, slowEnd, slow, runtimeBaseMs, nanoBase, begin);
+        return result;
+    }
+
+    /**
+     * Сопоставляет медленные операции с паузами сборщика, начавшимися после
+     * прогрева. Уведомления приходят асинхронно, поэтому перед разбором
+     * выдерживается короткая пауза. Точность - миллисекунда.
+     */
+    static void attributeGc(Result result, GcMonitor gc, long[] slowStart, long[] slowEnd, int slow,
+                            long runtimeBaseMs, long nanoBase, long measureBegin) {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long fromMs = runtimeBaseMs + (measureBegin - nanoBase) / 1_000_000;
+        List<GcMonitor.Pause> pauses = new ArrayList<>();
+        for (GcMonitor.Pause p : gc.snapshot()) {
+            if (p.startMs() + p.durationMs() >= fromMs)
+                pauses.add(p);
+        }
+        result.gcPauses = pauses.size();
+        for (GcMonitor.Pause p : pauses)
+            result.gcPauseMs += p.durationMs();
+        result.slowOps = slow;
+        for (int i = 0; i < slow; ++i) {
+            long s = runtimeBaseMs + (slowStart[i] - nanoBase) / 1_000_000;
+            long e = runtimeBaseMs + (slowEnd[i] - nanoBase) / 1_000_000;
+            for (GcMonitor.Pause p : pauses) {
+                if (s <= p.startMs() + p.durationMs() + 1 && e >= p.startMs() - 1) {
+                    ++result.slowOpsInGc;
+                    break;
+                }
+            }
+        }
+    }
+
+    static List<Result> runAll(Config c) {
+        Map<String, Supplier<Map<Long, Long>>> variants = variants();
+        double allocOverhead = allocationOverhead();
+        List<Result> results = new ArrayList<>();
+        try (GcMonitor gc = new GcMonitor()) {
+            for (KeyMode mode : c.modes) {
+                Workload w = new Workload(c, mode);
+                for (String name : c.maps) {
+                    System.gc();
+                    results.add(run(name, variants.get(name), w, c, gc, allocOverhead));
+                }
+            }
+        }
+        return results;
+    }
+
+    static void report(List<Result> results, Config c, PrintStream out) {
+        out.printf("# Map operation latency%n%n");
+        out.printf("ops=%d warmup=%d keys=%d mix(get/put/remove)=%s zipf=%.2f seed=%d slow>=%dus, java %s%n",
+                c.ops, c.warmupOps, c.keys, c.mix(), c.zipf, c.seed, c.slowNanos / 1000,
+                System.getProperty("java.version"));
+        for (KeyMode mode : c.modes) {
+            Result base = null;
+            for (Result r : results) {
+                if (r.mode == mode && r.map.equals(BASELINE))
+                    base = r;
+            }
+            out.printf("%n## %s%n%n", mode);
+            out.println("| map | op | count | mean us | p50 us | p90 us | p99 us | p99.9 us | max us | B/op | p99 vs " + BASELINE + " |");
+            out.println("|---|---|---:|---:|---:|---:|---:|---:|---:|---:|---:|");
+            for (Result r : results) {
+                if (r.mode != mode)
+                    continue;
+                for (Op op : Op.values()) {
+                    LatencyHistogram h = r.latency[op.ordinal()];
+                    String ratio = base == null || base.latency[op.ordinal()].percentile(99) == 0 ? "-"
+                            : String.format(Locale.ROOT, "%.2fx",
+                            (double) h.percentile(99) / base.latency[op.ordinal()].percentile(99));
+                    out.printf(Locale.ROOT, "| %s | %s | %d | %.3f | %.3f | %.3f | %.3f | %.3f | %.3f | %.1f | %s |%n",
+                            r.map, op, h.count(), h.mean() / 1000, us(h.percentile(50)), us(h.percentile(90)),
+                            us(h.percentile(99)), us(h.percentile(99.9)), us(h.max()), r.bytesPerOp(op), ratio);
+                }
+            }
+            out.println();
+            out.println("| map | ops/s | vs " + BASELINE + " | final size | GC pauses | GC pause ms | slow ops | slow ops in GC |");
+            out.println("|---|---:|---:|---:|---:|---:|---:|---:|");
+            for (Result r : results) {
+                if (r.mode != mode)
+                    continue;
+                String ratio = base == null ? "-" : String.format(Locale.ROOT, "%.2fx", r.opsPerSecond() / base.opsPerSecond());
+                out.printf(Locale.ROOT, "| %s | %.0f | %s | %d | %d | %d | %d | %d |%n",
+                        r.map, r.opsPerSecond(), ratio, r.finalSize, r.gcPauses, r.gcPauseMs, r.slowOps, r.slowOpsInGc);
+            }
+        }
+    }
+
+    private static double us(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Config c = Config.parse(args);
+        List<Result> results = runAll(c);
+        report(results, c, System.out);
+        if (c.out != null) {
+            try (PrintStream file = new PrintStream(Files.newOutputStream(c.out), true, StandardCharsets.UTF_8)) {
+                report(results, c, file);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapLatencyHarnessTest {
+
+    @Test
+    void testHistogramSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i)
+            h.record(i);
+
+        assertEquals(100, h.count());
+        assertEquals(50, h.percentile(50));
+        assertEquals(99, h.percentile(99));
+        assertEquals(100, h.percentile(100));
+        assertEquals(50.5, h.mean());
+    }
+
+    @Test
+    void testHistogramRelativeError() {
+        for (long v = 1; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+            int index = LatencyHistogram.indexOf(v);
+            long high = LatencyHistogram.highestEquivalent(index);
+
+            assertTrue(high >= v, "value " + v);
+            assertTrue(high - v <= v / 64, "value " + v + " bucket " + high);
+            assertEquals(index, LatencyHistogram.indexOf(high));
+        }
+    }
+
+    @Test
+    void testHistogramAdd() {
+        LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram();
+        a.record(10);
+        b.record(1_000_000);
+        a.add(b);
+
+        assertEquals(2, a.count());
+        assertEquals(1_000_000, a.max());
+        assertEquals(10, a.percentile(50));
+        assertEquals(1_000_000, a.percentile(100));
+    }
+
+    @Test
+    void testZipfIsSkewed() {
+        MapLatencyHarness.ZipfSampler zipf = new MapLatencyHarness.ZipfSampler(1000, 0.99);
+        SplittableRandom random = new SplittableRandom(1);
+        int[] counts = new int[1000];
+        for (int i = 0; i < 100_000; ++i)
+            ++counts[zipf.next(random)];
+
+        assertTrue(counts[0] > counts[1]);
+        assertTrue(counts[1] > counts[100]);
+        assertTrue(counts[0] > 10_000);
+    }
+
+    @Test
+    void testGrowingWorkloadInsertsFreshKeys() {
+        MapLatencyHarness.Config c = MapLatencyHarness.Config.parse(new String[]{"--ops=10000", "--warmup=0", "--keys=1000"});
+        MapLatencyHarness.Workload w = new MapLatencyHarness.Workload(c, MapLatencyHarness.KeyMode.GROWING);
+
+        int expected = w.prefill;
+        for (int i = 0; i < w.ops.length; ++i) {
+            if (w.ops[i] == MapLatencyHarness.Op.PUT.ordinal())
+                assertEquals(expected++, w.keys[i]);
+            else
+                assertTrue(w.keys[i] < expected);
+        }
+        assertEquals(expected, w.boxed.length);
+    }
+
+    @Test
+    void testSmallRunReport() {
+        MapLatencyHarness.Config c = MapLatencyHarness.Config.parse(new String[]{
+                "--ops=20000", "--warmup=5000", "--keys=2000", "--maps=HashMap,MyHashMap,MySwissHashMap", "--mix=80/15/5"});
+        List<MapLatencyHarness.Result> results = MapLatencyHarness.runAll(c);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MapLatencyHarness.report(results, c, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        String report = bytes.toString(StandardCharsets.UTF_8);
+
+        assertEquals(6, results.size());
+        for (MapLatencyHarness.Result r : results)
+            assertEquals(20_000, r.ops());
+        assertTrue(report.contains("## ZIPF"));
+        assertTrue(report.contains("## GROWING"));
+        assertTrue(report.contains("| MySwissHashMap | GET |"));
+        assertTrue(report.contains("80/15/5"));
+    }
+
+    @Test
+    void testIllegalOptions() {
+        assertThrows(IllegalArgumentException.class, () -> MapLatencyHarness.Config.parse(new String[]{"--maps=TreeMap"}));
+        assertThrows(IllegalArgumentException.class, () -> MapLatencyHarness.Config.parse(new String[]{"--mix=90/9/9"}));
+        assertThrows(IllegalArgumentException.class, () -> MapLatencyHarness.Config.parse(new String[]{"ops"}));
+    }
+}
@@ -0,0 +1,163 @@
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyCompactHashMapTest {
+
+    private MyCompactHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyCompactHashMap<>();
+
+        map.put(1, "1");
+        map.put(null, null);
+        map.put(3, "3");
+    }
+
+    @Test
+    void testStartsInline() {
+        assertFalse(map.isInflated());
+        assertNull(map.getTable());
+        assertEquals(3, map.size());
+        assertEquals("1", map.get(1));
+        assertTrue(map.containsKey(null));
+        assertTrue(map.containsValue(null));
+        assertFalse(map.containsKey(2));
+    }
+
+    @Test
+    void testPutOldKeyInline() {
+        assertEquals("3", map.put(3, "33"));
+        assertEquals("33", map.get(3));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void testRemoveInline() {
+        assertEquals("1", map.remove(1));
+        assertNull(map.remove(1));
+        assertEquals(2, map.size());
+        assertEquals("3", map.get(3));
+        assertTrue(map.containsKey(null));
+    }
+
+    @Test
+    void testInflateAfterInlineCapacity() {
+        for (int i = 10; map.size() < MyCompactHashMap.INLINE_CAPACITY; ++i)
+            map.put(i, String.valueOf(i));
+        assertFalse(map.isInflated());
+
+        map.put(100, "100");
+
+        assertTrue(map.isInflated());
+        assertNotNull(map.getTable());
+        assertEquals(MyCompactHashMap.INLINE_CAPACITY + 1, map.size());
+        assertEquals("1", map.get(1));
+        assertEquals("100", map.get(100));
+        assertTrue(map.containsKey(null));
+    }
+
+    @Test
+    void testPutAllInflatesInAdvance() {
+        Map<Integer, String> m = new HashMap<>();
+        for (int i = 10; i < 30; ++i)
+            m.put(i, String.valueOf(i));
+
+        map.putAll(m);
+
+        assertTrue(map.isInflated());
+        assertEquals(23, map.size());
+        assertEquals("29", map.get(29));
+    }
+
+    @Test
+    void testViewsInline() {
+        var entrySet = map.entrySet();
+        assertEquals(3, entrySet.size());
+        assertTrue(entrySet.contains(Map.entry(1, "1")));
+        assertTrue(map.keySet().contains(3));
+        assertTrue(map.values().contains("3"));
+
+        var it = map.keySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            if (it.next() == null)
+                it.remove();
+            ++count;
+        }
+        assertEquals(3, count);
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey(null));
+
+        for (var e : entrySet)
+            e.setValue("x");
+        assertEquals("x", map.get(1));
+        assertEquals("x", map.get(3));
+    }
+
+    @Test
+    void testViewsSurviveInflation() {
+        var entrySet = map.entrySet();
+        for (int i = 10; i < 20; ++i)
+            map.put(i, String.valueOf(i));
+
+        assertTrue(map.isInflated());
+        assertEquals(13, entrySet.size());
+        int count = 0;
+        for (var ignored : entrySet)
+            ++count;
+        assertEquals(13, count);
+    }
+
+    @Test
+    void testClear() {
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(1));
+        map.put(5, "5");
+        assertEquals("5", map.get(5));
+    }
+
+    @Test
+    void testAsyncBulkInline() {
+        assertEquals(1, map.scanAsync((k, v) -> "3".equals(v)).join().size());
+
+        map.clearAsync().join();
+        assertFalse(map.isInflated());
+        assertEquals(0, map.size());
+
+        Map<Integer, String> source = new HashMap<>();
+        for (int i = 0; i < 20; ++i)
+            source.put(i, String.valueOf(i));
+        map.putAllAsync(source).join();
+        assertTrue(map.isInflated());
+        assertEquals(20, map.size());
+        assertEquals(20, map.scanAsync((k, v) -> true).join().size());
+    }
+
+    @Test
+    void testSetValueOnRemovedEntry() {
+        Map.Entry<Integer, String> e = map.entrySet().iterator().next();
+        map.remove(e.getKey());
+
+        assertThrows(IllegalStateException.class, () -> e.setValue("zombie"));
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey(e.getKey()));
+    }
+
+    @Test
+    void testSetValueAfterInflation() {
+        Map.Entry<Integer, String> e = map.entrySet().iterator().next();
+        for (int i = 10; i < 20; ++i)
+            map.put(i, String.valueOf(i));
+
+        assertTrue(map.isInflated());
+        assertEquals(e.getValue(), e.setValue("x"));
+        assertEquals("x", map.get(e.getKey()));
+        assertEquals(13, map.size());
+    }
+}
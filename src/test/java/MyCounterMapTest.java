@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyCounterMapTest {
+
+    private MyCounterMap<String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyCounterMap<>();
+
+        map.increment("a");
+        map.increment("a");
+        map.add("b", 10);
+    }
+
+    @Test
+    void testIncrementAndGet() {
+        assertEquals(2, map.get("a"));
+        assertEquals(10, map.get("b"));
+        assertEquals(0, map.get("c"));
+        assertFalse(map.containsKey("c"));
+        assertEquals(2, map.size());
+        assertEquals(12, map.sum());
+    }
+
+    @Test
+    void testNegativeDelta() {
+        map.add("a", -5);
+
+        assertEquals(-3, map.get("a"));
+        assertEquals(7, map.sum());
+    }
+
+    @Test
+    void testForEach() {
+        Map<String, Long> seen = new HashMap<>();
+        map.forEach(seen::put);
+
+        assertEquals(Map.of("a", 2L, "b", 10L), seen);
+    }
+
+    @Test
+    void testManyKeys() {
+        MyCounterMap<Integer> m = new MyCounterMap<>();
+        for (int i = 0; i < 10_000; ++i)
+            m.add(i % 1000, i);
+
+        assertEquals(1000, m.size());
+        assertEquals(49_995_000L, m.sum());
+        assertEquals(45_000L, m.get(0));
+    }
+
+    @Test
+    void testConcurrentIncrements() throws Exception {
+        MyCounterMap<Integer> m = new MyCounterMap<>();
+        int threads = 4, perThread = 100_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; ++t) {
+                futures[t] = pool.submit(() -> {
+                    for (int i = 0; i < perThread; ++i) {
+                        m.increment(0);
+                        m.increment(i & 1023);
+                    }
+                });
+            }
+            for (Future<?> f : futures)
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(1024, m.size());
+        assertEquals(2L * threads * perThread, m.sum());
+        assertEquals((long) threads * perThread + threads * (perThread / 1024 + 1), m.get(0));
+    }
+
+    @Test
+    void testUncontendedCounterHasNoCells() {
+        var c = new MyCounterMap.Counter();
+        for (int i = 0; i < 1000; ++i)
+            c.add(i);
+
+        assertEquals(0, c.cellCount());
+        assertEquals(499_500L, c.sum());
+    }
+
+    @Test
+    void testContendedCounterGrowsCellsUpToLimit() throws Exception {
+        var c = new MyCounterMap.Counter();
+        int threads = 8, perThread = 200_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; ++i)
+                    c.add(1);
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers)
+            w.join();
+
+        assertEquals((long) threads * perThread, c.sum());
+        assertTrue(c.cellCount() <= Math.max(MyCounterMap.Counter.CELL_COUNT, 2), "cells: " + c.cellCount());
+    }
+}
@@ -0,0 +1,219 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyDurableHashMapTest {
+
+    @TempDir
+    Path dir;
+
+    private MyDurableHashMap<Integer, String> open(int batchSize, long compactionBytes) throws IOException {
+        return new MyDurableHashMap<>(dir, MyHashMapCodec.INTEGER, MyHashMapCodec.STRING,
+                batchSize, compactionBytes);
+    }
+
+    @Test
+    void testReplayAfterReopen() throws IOException {
+        try (var map = open(4, 1 << 20)) {
+            for (int i = 0; i < 10; ++i)
+                map.put(i, String.valueOf(i));
+            assertEquals("3", map.remove(3));
+            assertNull(map.remove(42));
+            map.put(null, null);
+        }
+
+        try (var map = open(4, 1 << 20)) {
+            assertEquals(10, map.size());
+            assertFalse(map.containsKey(3));
+            assertEquals("9", map.get(9));
+            assertTrue(map.containsKey(null));
+        }
+    }
+
+    @Test
+    void testSerializerFailureLeavesMapAndLogUnchanged() throws IOException {
+        MyHashMapCodec.Serializer<String> strict = new MyHashMapCodec.Serializer<>() {
+            public void write(DataOutput out, String value) throws IOException {
+                MyHashMapCodec.STRING.write(out, value);
+                if (value.equals("bad"))
+                    throw new IllegalArgumentException(value);
+            }
+
+            public String read(DataInput in) throws IOException {
+                return MyHashMapCodec.STRING.read(in);
+            }
+        };
+        try (var map = new MyDurableHashMap<>(dir, MyHashMapCodec.INTEGER, strict, 4, 1 << 20)) {
+            map.put(1, "1");
+            assertThrows(IllegalArgumentException.class, () -> map.put(2, "bad"));
+            assertFalse(map.containsKey(2));
+            map.put(3, "3");
+        }
+
+        try (var map = open(4, 1 << 20)) {
+            assertEquals(2, map.size());
+            assertEquals("3", map.get(3));
+            assertFalse(map.containsKey(2));
+        }
+    }
+
+    @Test
+    void testClearIsLogged() throws IOException {
+        try (var map = open(100, 1 << 20)) {
+            map.put(1, "1");
+            map.clear();
+            map.put(2, "2");
+        }
+
+        try (var map = open(100, 1 << 20)) {
+            assertEquals(1, map.size());
+            assertEquals("2", map.get(2));
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws IOException {
+        try (var map = open(1, 1 << 20)) {
+            map.put(1, "1");
+            map.put(2, "2");
+        }
+        Path log = dir.resolve("wal-0.log");
+        long size = Files.size(log);
+        try (var ch = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            ch.truncate(size - 3);
+        }
+
+        try (var map = open(1, 1 << 20)) {
+            assertEquals(1, map.size());
+            assertEquals("1", map.get(1));
+            map.put(3, "3");
+        }
+
+        try (var map = open(1, 1 << 20)) {
+            assertEquals(2, map.size());
+            assertEquals("3", map.get(3));
+        }
+    }
+
+    @Test
+    void testCompaction() throws IOException {
+        try (var map = open(8, 256)) {
+            for (int i = 0; i < 500; ++i)
+                map.put(i % 50, "v" + i);
+            map.compact().join();
+
+            assertTrue(map.getGeneration() > 0);
+            assertTrue(Files.exists(dir.resolve("snapshot-" + map.getGeneration() + ".bin")));
+            assertFalse(Files.exists(dir.resolve("wal-0.log")));
+            map.put(1000, "1000");
+        }
+
+        try (var map = open(8, 256)) {
+            assertEquals(51, map.size());
+            assertEquals("v499", map.get(49));
+            assertEquals("1000", map.get(1000));
+        }
+    }
+
+    /**
+     * Сериализатор строк, который в потоке компактизации ждет {@code gate}
+     * или бросает {@link IOException}, если {@code gate == null}.
+     */
+    private static MyHashMapCodec.Serializer<String> compactorHook(CountDownLatch gate) {
+        return new MyHashMapCodec.Serializer<>() {
+            public void write(DataOutput out, String value) throws IOException {
+                if (Thread.currentThread().getName().equals("MyDurableHashMap-compactor")) {
+                    if (gate == null)
+                        throw new IOException("disk full");
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                MyHashMapCodec.STRING.write(out, value);
+            }
+
+            public String read(DataInput in) throws IOException {
+                return MyHashMapCodec.STRING.read(in);
+            }
+        };
+    }
+
+    @Test
+    void testWritesDuringCompactionGoOverFrozenMap() throws Exception {
+        var gate = new CountDownLatch(1);
+        try (var map = new MyDurableHashMap<>(dir, MyHashMapCodec.INTEGER, compactorHook(gate), 4, 1 << 20)) {
+            for (int i = 0; i < 10; ++i)
+                map.put(i, String.valueOf(i));
+            var done = map.compact();
+
+            assertEquals("0", map.put(0, "zero"));
+            assertEquals("1", map.remove(1));
+            assertNull(map.put(10, "10"));
+            assertNull(map.remove(1));
+            assertEquals(10, map.size());
+            assertEquals("zero", map.get(0));
+            assertFalse(map.containsKey(1));
+            assertFalse(done.isDone());
+
+            gate.countDown();
+            done.join();
+            map.put(11, "11");
+            assertEquals(11, map.size());
+            assertEquals("zero", map.get(0));
+            assertFalse(map.containsKey(1));
+        }
+
+        try (var map = open(4, 1 << 20)) {
+            assertEquals(11, map.size());
+            assertEquals("zero", map.get(0));
+            assertEquals("10", map.get(10));
+            assertFalse(map.containsKey(1));
+        }
+    }
+
+    @Test
+    void testClearDuringCompaction() throws Exception {
+        var gate = new CountDownLatch(1);
+        try (var map = new MyDurableHashMap<>(dir, MyHashMapCodec.INTEGER, compactorHook(gate), 4, 1 << 20)) {
+            for (int i = 0; i < 10; ++i)
+                map.put(i, String.valueOf(i));
+            var done = map.compact();
+            map.clear();
+            map.put(5, "five");
+
+            assertEquals(1, map.size());
+            assertNull(map.get(4));
+            gate.countDown();
+            done.join();
+            map.commit();
+        }
+
+        try (var map = open(4, 1 << 20)) {
+            assertEquals(1, map.size());
+            assertEquals("five", map.get(5));
+        }
+    }
+
+    @Test
+    void testCloseRethrowsSnapshotFailure() throws IOException {
+        var map = new MyDurableHashMap<>(dir, MyHashMapCodec.INTEGER, compactorHook(null), 4, 1 << 20);
+        map.put(1, "1");
+        map.compact();
+
+        IOException e = assertThrows(IOException.class, map::close);
+        assertEquals("disk full", e.getMessage());
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyFilteredHashMapTest {
+
+    private MyFilteredHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyFilteredHashMap<>();
+        for (int i = 0; i < 1000; ++i)
+            map.put(i, String.valueOf(i));
+    }
+
+    @Test
+    void testNoFalseNegatives() {
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(String.valueOf(i), map.get(i));
+            assertTrue(map.containsKey(i));
+        }
+        assertEquals(0, map.rejectedLookups());
+        assertEquals(0, map.falsePositives());
+    }
+
+    @Test
+    void testRejectsMostMisses() {
+        for (int i = 1000; i < 11_000; ++i)
+            assertNull(map.get(i));
+
+        assertEquals(10_000, map.rejectedLookups() + map.falsePositives());
+        assertTrue(map.falsePositives() < 1000, "false positives: " + map.falsePositives());
+    }
+
+    @Test
+    void testFilterIsSizedFromThreshold() {
+        assertEquals(MyHashMap.tableSizeFor(map.getThreshold() * MyFilteredHashMap.BITS_PER_ENTRY / Long.SIZE),
+                map.getFilter().length);
+    }
+
+    @Test
+    void testRebuiltAfterRemovals() {
+        for (int i = 0; i < 1000; ++i)
+            map.remove(i);
+        for (int i = 0; i < 1000; ++i)
+            assertNull(map.get(i));
+
+        assertTrue(map.rejectedLookups() >= map.getThreshold() >>> 1, "rejected: " + map.rejectedLookups());
+    }
+
+    @Test
+    void testClear() {
+        map.clear();
+
+        assertNull(map.get(1));
+        assertEquals(1, map.rejectedLookups());
+        map.put(1, "1");
+        assertEquals("1", map.get(1));
+        assertFalse(map.containsKey(null));
+        map.put(null, "null");
+        assertTrue(map.containsKey(null));
+    }
+
+    @Test
+    void testClearAsyncResetsFilter() {
+        map.clearAsync().join();
+
+        for (long word : map.getFilter())
+            assertEquals(0L, word);
+        for (int i = 0; i < 1000; ++i)
+            assertNull(map.get(i));
+        assertEquals(1000, map.rejectedLookups());
+    }
+
+    @Test
+    void testClearZeroesOnlyTouchedWords() {
+        var sparse = new MyFilteredHashMap<Integer, String>(1 << 16);
+        for (int i = 0; i < 3; ++i)
+            sparse.put(i, "v");
+        int touched = sparse.getTouchedWordCount();
+        assertTrue(touched > 0 && touched <= 3, "touched: " + touched);
+
+        sparse.clear();
+        assertEquals(0, sparse.getTouchedWordCount());
+        for (long word : sparse.getFilter())
+            assertEquals(0L, word);
+        assertNull(sparse.get(1));
+        sparse.put(1, "1");
+        assertEquals("1", sparse.get(1));
+    }
+
+    @Test
+    void testClearAfterOverflowZeroesWholeFilter() {
+        assertEquals(-1, map.getTouchedWordCount());
+        map.clear();
+
+        assertEquals(0, map.getTouchedWordCount());
+        for (long word : map.getFilter())
+            assertEquals(0L, word);
+    }
+
+    @Test
+    void testTinyMapHasAtLeastTwoWords() {
+        var tiny = new MyFilteredHashMap<Integer, String>(1);
+        for (int i = 0; i < 4; ++i)
+            tiny.put(i, String.valueOf(i));
+
+        assertTrue(tiny.getFilter().length >= 2);
+        for (int i = 0; i < 4; ++i)
+            assertEquals(String.valueOf(i), tiny.get(i));
+        assertNull(tiny.get(100));
+    }
+
+    @Test
+    void testEmptyMap() {
+        MyFilteredHashMap<String, String> m = new MyFilteredHashMap<>();
+
+        assertNull(m.get("a"));
+        assertNull(m.getFilter());
+        m.put("a", "b");
+        assertEquals("b", m.get("a"));
+        assertEquals("b", m.getOrDefault("a", "c"));
+        assertEquals("c", m.getOrDefault("x", "c"));
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyHashMapCodecTest {
+
+    private final MyHashMapCodec<Integer, String> codec =
+            new MyHashMapCodec<>(MyHashMapCodec.INTEGER, MyHashMapCodec.STRING);
+    private MyHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyHashMap<>(16, 0.5f);
+        for (int i = 0; i < 1000; ++i)
+            map.put(i, "value" + i);
+        map.put(null, "null");
+        map.put(-1, null);
+    }
+
+    private void assertSameContent(MyHashMap<Integer, String> expected, MyHashMap<Integer, String> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (var e : expected.entrySet()) {
+            assertTrue(actual.containsKey(e.getKey()));
+            assertEquals(e.getValue(), actual.get(e.getKey()));
+        }
+    }
+
+    @Test
+    void testStreamRoundTrip() throws IOException {
+        var out = new ByteArrayOutputStream();
+        codec.write(map, out);
+
+        var copy = codec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertSameContent(map, copy);
+        assertEquals(0.5f, copy.loadFactor);
+        assertEquals(map.getTable().length, copy.getTable().length);
+    }
+
+    @Test
+    void testFileChannelRoundTrip(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("map.bin");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            codec.write(map, channel);
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertSameContent(map, codec.read(channel));
+        }
+    }
+
+    @Test
+    void testEmptyAndCompactMaps() throws IOException {
+        var out = new ByteArrayOutputStream();
+        codec.write(new MyHashMap<>(), out);
+        assertTrue(codec.read(new ByteArrayInputStream(out.toByteArray())).isEmpty());
+
+        var compact = new MyCompactHashMap<Integer, String>();
+        compact.put(1, "1");
+        compact.put(2, "2");
+        out.reset();
+        codec.write(compact, out);
+        var copy = codec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, copy.size());
+        assertEquals("2", copy.get(2));
+    }
+
+    @Test
+    void testEquivalenceRoundTrip() throws IOException {
+        Equivalence<String> ignoreCase = Equivalence.of(String::equalsIgnoreCase,
+                k -> k.toLowerCase().hashCode());
+        var strings = new MyHashMapCodec<>(MyHashMapCodec.STRING, MyHashMapCodec.STRING);
+        MyHashMap<String, String> source = new MyHashMap<>(ignoreCase);
+        for (int i = 0; i < 100; ++i)
+            source.put("Key" + i, "value" + i);
+        source.put(null, "null");
+
+        var out = new ByteArrayOutputStream();
+        strings.write(source, out);
+        MyHashMap<String, String> read = strings.read(new ByteArrayInputStream(out.toByteArray()), ignoreCase);
+
+        assertEquals(source.size(), read.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals("value" + i, read.get("KEY" + i));
+        assertEquals("null", read.get(null));
+        read.put("key0", "x");
+        assertEquals(source.size(), read.size());
+        assertEquals("x", read.get("Key0"));
+    }
+
+    @Test
+    void testCorruptedStream() {
+        assertThrows(StreamCorruptedException.class,
+                () -> codec.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+
+        var bytes = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> codec.write(map, bytes));
+        byte[] data = bytes.toByteArray();
+        data[4] = 99;
+        assertThrows(InvalidObjectException.class, () -> codec.read(new ByteArrayInputStream(data)));
+    }
+}
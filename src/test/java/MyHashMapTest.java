@@ -3,6 +3,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -346,6 +351,72 @@ class MyHashMapTest {
         }
     }
 
+    @Nested
+    class EquivalenceTest {
+
+        @Test
+        void testIdentity() {
+            var map = new MyHashMap<String, Integer>(Equivalence.identity());
+            String a = new String("key");
+            String b = new String("key");
+
+            map.put(a, 1);
+            map.put(b, 2);
+            map.put(null, 0);
+
+            assertEquals(3, map.size());
+            assertEquals(1, map.get(a));
+            assertEquals(2, map.get(b));
+            assertNull(map.get("other"));
+            assertEquals(0, map.get(null));
+            assertEquals(1, map.remove(a));
+            assertFalse(map.containsKey(a));
+            assertTrue(map.containsKey(b));
+        }
+
+        @Test
+        void testArrays() {
+            var map = new MyHashMap<int[], String>(16, 0.75f, Equivalence.arrays());
+
+            map.put(new int[]{1, 2}, "12");
+            assertEquals("12", map.put(new int[]{1, 2}, "21"));
+
+            assertEquals(1, map.size());
+            assertEquals("21", map.get(new int[]{1, 2}));
+            assertNull(map.get(new int[]{2, 1}));
+            assertTrue(map.keySet().remove(new int[]{1, 2}));
+            assertEquals(0, map.size());
+        }
+
+        @Test
+        void testArraysEntryViews() {
+            var map = new MyHashMap<int[], String>(16, 0.75f, Equivalence.arrays());
+            map.put(new int[]{1, 2}, "x");
+
+            assertTrue(map.containsKey(new int[]{1, 2}));
+            assertTrue(map.entrySet().contains(Map.entry(new int[]{1, 2}, "x")));
+            assertFalse(map.entrySet().contains(Map.entry(new int[]{1, 2}, "y")));
+            assertFalse(map.entrySet().remove(Map.entry(new int[]{1, 2}, "y")));
+            assertTrue(map.entrySet().remove(Map.entry(new int[]{1, 2}, "x")));
+            assertTrue(map.isEmpty());
+        }
+
+        @Test
+        void testCustom() {
+            Equivalence<String> ignoreCase = Equivalence.of(String::equalsIgnoreCase,
+                    s -> s.toLowerCase().hashCode());
+            var map = new MyHashMap<String, Integer>(ignoreCase);
+
+            for (int i = 0; i < 100; ++i)
+                map.put("Key" + i, i);
+            map.put("KEY5", 500);
+
+            assertEquals(100, map.size());
+            assertEquals(500, map.get("key5"));
+            assertEquals(99, map.get("kEy99"));
+        }
+    }
+
     @Nested
     class IteratorsTest {
         private MyHashMap<Integer, String> map;
@@ -420,22 +491,157 @@ class MyHashMapTest {
 
     }
 
-}
+    @Nested
+    class AsyncBulkTest {
+        private MyHashMap<Integer, Integer> source;
+        private ExecutorService executor;
 
+        @BeforeEach
+        void setUp() {
+            source = new MyHashMap<>();
+            for (int i = 0; i < 5000; ++i)
+                source.put(i, i * 2);
+            executor = Executors.newSingleThreadExecutor();
+        }
 
+        @AfterEach
+        void tearDown() {
+            executor.shutdownNow();
+        }
 
+        @Test
+        void testPutAllAsync() throws Exception {
+            MyHashMap<Integer, Integer> map = new MyHashMap<>();
+            map.putAllAsync(source, executor).get(10, TimeUnit.SECONDS);
 
+            assertEquals(5000, map.size());
+            assertEquals(8192, map.getTable().length);
+            assertEquals(9998, map.get(4999));
+        }
 
+        @Test
+        void testPutAllAsyncOnCallerThread() {
+            MyHashMap<Integer, Integer> map = new MyHashMap<>();
+            CompletableFuture<Void> f = map.putAllAsync(source);
 
+            assertTrue(f.isDone());
+            assertEquals(5000, map.size());
+        }
 
+        @Test
+        void testScanAsync() throws Exception {
+            var found = source.scanAsync((k, v) -> v % 1000 == 0, executor).get(10, TimeUnit.SECONDS);
 
+            assertEquals(10, found.size());
+            assertTrue(found.contains(Map.entry(500, 1000)));
+            assertTrue(source.scanAsync((k, v) -> v == 3).join().isEmpty());
+            assertTrue(new MyHashMap<Integer, Integer>().scanAsync((k, v) -> true).join().isEmpty());
+        }
 
+        @Test
+        void testScanAsyncFailure() {
+            CompletableFuture<?> f = source.scanAsync((k, v) -> { throw new IllegalStateException(); }, executor);
 
+            ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
 
+        @Test
+        void testClearAsync() throws Exception {
+            int length = source.getTable().length;
+            source.clearAsync(executor).get(10, TimeUnit.SECONDS);
+
+            assertEquals(0, source.size());
+            assertEquals(length, source.getTable().length);
+            for (Node<Integer, Integer> node : source.getTable())
+                assertNull(node);
+            source.clearAsync().join();
+            assertTrue(source.isEmpty());
+        }
+    }
+
+    @Nested
+    class LazyClearTest {
+        private MyHashMap<Integer, String> map;
+
+        @BeforeEach
+        void setUp() {
+            map = new MyHashMap<>(1 << 10);
+
+            map.put(1, "1");
+            map.put(1025, "1025");
+            map.put(7, "7");
+        }
+
+        @Test
+        void testClearOnlyTouchedBuckets() {
+            assertEquals(2, map.getTouchedCount());
+            map.clear();
+
+            assertTrue(map.isEmpty());
+            assertEquals(0, map.getTouchedCount());
+            for (Node<Integer, String> node : map.getTable())
+                assertNull(node);
+            assertNull(map.get(1025));
+            map.put(1025, "x");
+            assertEquals("x", map.get(1025));
+            assertNull(map.get(1));
+        }
 
+        @Test
+        void testOverflowFallsBackToFullWipe() {
+            for (int i = 0; i < 200; ++i)
+                map.put(i, String.valueOf(i));
 
+            assertEquals(-1, map.getTouchedCount());
+            map.clear();
 
+            assertEquals(0, map.getTouchedCount());
+            for (Node<Integer, String> node : map.getTable())
+                assertNull(node);
+        }
 
+        @Test
+        void testResizeFallsBackToFullWipe() {
+            MyHashMap<Integer, String> small = new MyHashMap<>();
+            for (int i = 0; i < 100; ++i)
+                small.put(i, String.valueOf(i));
+            small.clear();
+
+            assertEquals(0, small.size());
+            for (Node<Integer, String> node : small.getTable())
+                assertNull(node);
+        }
+
+        @Test
+        void testReinsertRecordsBucketAgainUntilOverflow() {
+            map.remove(1);
+            map.put(1, "1");
+            assertEquals(2, map.getTouchedCount());
+            map.remove(7);
+            map.put(7, "7");
+            assertEquals(3, map.getTouchedCount());
+
+            for (int i = 0; i < 200; ++i) {
+                map.remove(7);
+                map.put(7, "7");
+            }
+            assertEquals(-1, map.getTouchedCount());
+            map.clear();
 
+            assertEquals(0, map.getTouchedCount());
+            for (Node<Integer, String> node : map.getTable())
+                assertNull(node);
+        }
 
+        @Test
+        void testClearAsyncUsesTouchedBuckets() {
+            map.clearAsync().join();
 
+            assertTrue(map.isEmpty());
+            assertEquals(0, map.getTouchedCount());
+            for (Node<Integer, String> node : map.getTable())
+                assertNull(node);
+        }
+    }
+}
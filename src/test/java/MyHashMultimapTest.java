@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyHashMultimapTest {
+
+    private MyHashMultimap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyHashMultimap<>(16);
+
+        map.put(1, "a");
+        map.put(17, "b");
+        map.put(1, "c");
+        map.put(null, null);
+    }
+
+    @Test
+    void testPutAndGet() {
+        assertEquals(3, map.size());
+        assertEquals(4, map.valueCount());
+        assertEquals(List.of("a", "c"), map.get(1));
+        assertEquals(List.of("b"), map.get(17));
+        assertEquals(1, map.get(null).size());
+        assertTrue(map.get(2).isEmpty());
+    }
+
+    @Test
+    void testSingleValueHasNoArray() {
+        assertEquals("b", map.getNode(17).values);
+        assertInstanceOf(Object[].class, map.getNode(1).values);
+    }
+
+    @Test
+    void testViewReflectsAppends() {
+        var view = map.get(1);
+        for (int i = 0; i < 10; ++i)
+            map.put(1, String.valueOf(i));
+
+        assertEquals(12, view.size());
+        assertEquals("9", view.get(11));
+        assertThrows(UnsupportedOperationException.class, () -> view.add("x"));
+    }
+
+    @Test
+    void testRemoveAll() {
+        var view = map.get(1);
+
+        assertEquals(List.of("a", "c"), map.removeAll(1));
+        assertEquals(2, map.size());
+        assertEquals(2, map.valueCount());
+        assertTrue(view.isEmpty());
+        assertFalse(map.containsKey(1));
+        assertEquals(List.of("b"), map.removeAll(17));
+        assertTrue(map.removeAll(17).isEmpty());
+    }
+
+    @Test
+    void testClearEmptiesViews() {
+        var one = map.get(1);
+        var seventeen = map.get(17);
+        map.clear();
+
+        assertTrue(one.isEmpty());
+        assertTrue(seventeen.isEmpty());
+        map.put(1, "x");
+        assertTrue(one.isEmpty());
+        assertEquals(List.of("x"), map.get(1));
+    }
+
+    @Test
+    void testResizeKeepsValues() {
+        for (int i = 0; i < 1000; ++i) {
+            map.put(i, "x" + i);
+            map.put(i, "y" + i);
+        }
+
+        assertEquals(1001, map.size());
+        assertEquals(2004, map.valueCount());
+        assertEquals(List.of("a", "c", "x1", "y1"), map.get(1));
+        assertEquals(List.of("x999", "y999"), map.get(999));
+    }
+
+    @Test
+    void testForEachAndClear() {
+        List<String> values = new ArrayList<>();
+        map.forEach((k, v) -> values.add(k + "=" + v));
+        assertEquals(4, values.size());
+        assertTrue(values.contains("1=c"));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(0, map.valueCount());
+        assertTrue(map.get(1).isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyHashOperatorsTest {
+
+    record Row(int key, String name) { }
+
+    private static final List<Row> BUILD = List.of(
+            new Row(1, "a"), new Row(2, "b"), new Row(2, "c"), new Row(4, "d"));
+    private static final List<Row> PROBE = List.of(
+            new Row(2, "x"), new Row(3, "y"), new Row(1, "z"));
+
+    private static List<String> join(MyHashOperators.JoinType type) {
+        return MyHashOperators.hashJoin(type, BUILD, Row::key, PROBE, Row::key,
+                (l, r) -> (l == null ? "-" : l.name()) + r.name());
+    }
+
+    @Test
+    void testInnerJoin() {
+        assertEquals(List.of("bx", "cx", "az"), join(MyHashOperators.JoinType.INNER));
+    }
+
+    @Test
+    void testLeftJoin() {
+        assertEquals(List.of("bx", "cx", "-y", "az"), join(MyHashOperators.JoinType.LEFT));
+    }
+
+    @Test
+    void testSemiJoin() {
+        assertEquals(List.of("bx", "az"), join(MyHashOperators.JoinType.SEMI));
+    }
+
+    @Test
+    void testParallelJoinMatchesSequential() {
+        List<Row> build = new ArrayList<>(), probe = new ArrayList<>();
+        for (int i = 0; i < 10_000; ++i) {
+            build.add(new Row(i % 3000, "b" + i));
+            probe.add(new Row(i % 5000, "p" + i));
+        }
+        var pool = new ForkJoinPool(4);
+        try {
+            for (var type : MyHashOperators.JoinType.values()) {
+                var sequential = MyHashOperators.hashJoin(type, build, Row::key, probe, Row::key,
+                        (l, r) -> (l == null ? "-" : l.name()) + r.name());
+                var parallel = MyHashOperators.hashJoin(pool, type, build, Row::key, probe, Row::key,
+                        (l, r) -> (l == null ? "-" : l.name()) + r.name());
+                assertEquals(sequential.size(), parallel.size());
+                assertEquals(new HashMap<>(count(sequential)), count(parallel));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Map<String, Long> count(List<String> rows) {
+        return rows.stream().collect(Collectors.groupingBy(s -> s, Collectors.counting()));
+    }
+
+    @Test
+    void testGroupBy() {
+        var sums = MyHashOperators.groupBy(BUILD, Row::key, Collectors.summingInt(Row::key));
+        var names = MyHashOperators.groupBy(BUILD, Row::key, Collectors.mapping(Row::name, Collectors.toList()));
+
+        assertEquals(3, sums.size());
+        assertEquals(4, sums.get(2));
+        assertEquals(List.of("b", "c"), names.get(2));
+        assertNull(names.get(3));
+    }
+
+    @Test
+    void testParallelGroupBy() {
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 100_000; ++i)
+            input.add(i);
+        var pool = new ForkJoinPool(4);
+        try {
+            var counts = MyHashOperators.groupBy(pool, input, i -> i % 1000, Collectors.counting());
+
+            assertEquals(1000, counts.size());
+            for (int k = 0; k < 1000; ++k)
+                assertEquals(100L, counts.get(k));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyPooledHashMapTest {
+
+    private MyPooledHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MyPooledHashMap<>(16);
+
+        map.put(1, "1");
+        map.put(17, "17");
+    }
+
+    @Test
+    void testRemovedSlotIsReused() {
+        assertEquals("17", map.remove(17));
+        assertEquals(1, map.size());
+        assertEquals(1, map.getFreeCount());
+
+        map.put(33, "33");
+        assertEquals(0, map.getFreeCount());
+        assertEquals("33", map.get(33));
+        assertEquals("1", map.get(1));
+        assertNull(map.get(17));
+    }
+
+    @Test
+    void testHeldEntryKeepsItsKey() {
+        Map.Entry<Integer, String> held = null;
+        for (Map.Entry<Integer, String> e : map.entrySet()) {
+            if (e.getKey() == 17)
+                held = e;
+        }
+        held.setValue("x");
+        assertEquals("x", map.get(17));
+
+        map.remove(17);
+        map.put(33, "33");
+
+        assertEquals(17, held.getKey());
+        assertEquals("x", held.getValue());
+        Map.Entry<Integer, String> removed = held;
+        assertThrows(IllegalStateException.class, () -> removed.setValue("y"));
+        assertEquals("33", map.get(33));
+        assertNull(map.get(17));
+    }
+
+    @Test
+    void testHeldEntryStaysDetachedWhenSameKeyReturns() {
+        var held = map.entrySet().iterator().next();
+        Integer key = held.getKey();
+        String before = held.getValue();
+
+        map.remove(key);
+        map.put(key, "again");
+
+        assertEquals(before, held.getValue());
+        assertThrows(IllegalStateException.class, () -> held.setValue("x"));
+        assertEquals("again", map.get(key));
+        assertEquals(0, map.getFreeCount());
+    }
+
+    @Test
+    void testRemoveNonExistentKey() {
+        assertNull(map.remove(2));
+        assertEquals(0, map.getFreeCount());
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testChurnDoesNotGrowSlots() {
+        int slots = map.getSlotCapacity();
+        for (int i = 0; i < 10_000; ++i) {
+            map.put(100 + i, "v");
+            assertEquals("v", map.remove(100 + i));
+        }
+
+        assertEquals(slots, map.getSlotCapacity());
+        assertEquals(2, map.size());
+        assertEquals(1, map.getFreeCount());
+    }
+
+    @Test
+    void testFreeListIsBoundedByThreshold() {
+        var map = new MyPooledHashMap<Integer, String>(4);
+        for (int i = 0; i < 3; ++i)
+            map.put(i, String.valueOf(i));
+        map.put(3, "3");
+        for (int i = 0; i < 4; ++i)
+            map.remove(i);
+
+        assertEquals(0, map.size());
+        assertTrue(map.getFreeCount() <= map.getThreshold());
+    }
+
+    @Test
+    void testGrowthAndIteratorRemove() {
+        for (int i = 0; i < 1000; ++i)
+            map.put(i, String.valueOf(i));
+        var it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 2 == 0)
+                it.remove();
+        }
+
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; ++i)
+            assertEquals(i % 2 == 0 ? null : String.valueOf(i), map.get(i));
+        assertEquals(map.getSlotCapacity(), map.getThreshold());
+    }
+
+    @Test
+    void testClearAndNullKey() {
+        map.put(null, "null");
+        var held = map.entrySet().iterator().next();
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertThrows(IllegalStateException.class, () -> held.setValue("x"));
+        map.put(null, "again");
+        assertEquals("again", map.get(null));
+        assertEquals(List.of("again"), List.copyOf(map.values()));
+    }
+}
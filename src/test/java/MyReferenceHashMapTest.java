@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.*;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyReferenceHashMapTest {
+
+    @Test
+    void testBasicOperations() {
+        var map = new MyReferenceHashMap<String, Integer>(MyReferenceHashMap.ReferenceType.SOFT);
+        String a = "a", b = "b";
+
+        assertNull(map.put(a, 1));
+        assertNull(map.put(null, 0));
+        assertEquals(1, map.put(a, 2));
+        map.put(b, 3);
+
+        assertEquals(3, map.size());
+        assertEquals(2, map.get(a));
+        assertEquals(0, map.get(null));
+        assertTrue(map.containsKey(null));
+        assertEquals(3, map.remove(b));
+        assertFalse(map.containsKey(b));
+        assertTrue(map.entrySet().contains(Map.entry(a, 2)));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testResizeKeepsStronglyReachableKeys() {
+        var map = new MyReferenceHashMap<Integer, String>(2, 0.75f, MyReferenceHashMap.ReferenceType.WEAK);
+        Integer[] keys = new Integer[1000];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = 100_000 + i;
+            map.put(keys[i], String.valueOf(i));
+        }
+
+        assertEquals(1000, map.size());
+        assertEquals("999", map.get(keys[999]));
+        int count = 0;
+        for (var ignored : map.entrySet())
+            ++count;
+        assertEquals(1000, count);
+    }
+
+    @Test
+    void testWeakKeyIsExpunged() throws InterruptedException {
+        var map = new MyReferenceHashMap<Object, String>();
+        Object strong = new Object();
+        map.put(strong, "strong");
+        map.put(new Object(), "weak");
+
+        for (int i = 0; i < 50 && map.size() > 1; ++i) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, map.size());
+        assertEquals("strong", map.get(strong));
+        var it = map.entrySet().iterator();
+        assertTrue(it.hasNext());
+        assertSame(strong, it.next().getKey());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    void testIteratorRemove() {
+        var map = new MyReferenceHashMap<Integer, String>();
+        Integer k1 = 1000, k2 = 2000;
+        map.put(k1, "1");
+        map.put(k2, "2");
+
+        var it = map.entrySet().iterator();
+        it.next();
+        it.remove();
+
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testIteratorEntryKeepsKeyReachable() throws InterruptedException {
+        var map = new MyReferenceHashMap<Object, String>();
+        map.put(new Object(), "weak");
+
+        Map.Entry<Object, String> e = map.entrySet().iterator().next();
+        for (int i = 0; i < 10; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNotNull(e.getKey());
+        assertEquals(1, map.size());
+        assertEquals("weak", e.setValue("updated"));
+        assertEquals("updated", map.get(e.getKey()));
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySingleWriterHashMapTest {
+
+    private MySingleWriterHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MySingleWriterHashMap<>(4);
+
+        map.put(1, "a");
+        map.put(5, "b");
+        map.put(null, "n");
+    }
+
+    @Test
+    void testPutAndGet() {
+        assertEquals(3, map.size());
+        assertEquals("a", map.get(1));
+        assertEquals("b", map.get(5));
+        assertEquals("n", map.get(null));
+        assertNull(map.get(2));
+        assertEquals("a", map.put(1, "c"));
+        assertEquals("c", map.get(1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void testRemove() {
+        assertEquals("a", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.containsKey(5));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testResizeKeepsEntries() {
+        for (int i = 0; i < 1000; ++i)
+            map.put(i, String.valueOf(i));
+
+        assertEquals(1001, map.size());
+        assertEquals(2048, map.getTable().length);
+        for (int i = 0; i < 1000; ++i)
+            assertEquals(String.valueOf(i), map.get(i));
+    }
+
+    @Test
+    void testClear() {
+        int length = map.getTable().length;
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertEquals(length, map.getTable().length);
+    }
+
+    @Test
+    void testReadersDuringWrites() throws InterruptedException {
+        MySingleWriterHashMap<Integer, Integer> m = new MySingleWriterHashMap<>();
+        int stable = 256, total = 1 << 16;
+        for (int i = 0; i < stable; ++i)
+            m.put(i, i);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; ++r) {
+            readers[r] = new Thread(() -> {
+                while (!done.get()) {
+                    for (int i = 0; i < stable; ++i) {
+                        if (!Integer.valueOf(i).equals(m.get(i)))
+                            failure.compareAndSet(null, "lost key " + i);
+                    }
+                    for (int i = stable; i < total; i += 97) {
+                        Integer v = m.get(i);
+                        if (v != null && v != -i)
+                            failure.compareAndSet(null, "torn value for " + i);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = stable; i < total; ++i)
+            m.put(i, -i);
+        for (int i = stable; i < total; i += 2)
+            m.remove(i);
+        done.set(true);
+        for (Thread reader : readers)
+            reader.join();
+
+        assertNull(failure.get());
+        assertEquals(stable + (total - stable) / 2, m.size());
+    }
+}
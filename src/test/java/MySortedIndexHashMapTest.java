@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySortedIndexHashMapTest {
+
+    private MySortedIndexHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MySortedIndexHashMap<>(Comparator.naturalOrder());
+
+        for (int i = 0; i < 100; i += 10)
+            map.put(i, String.valueOf(i));
+    }
+
+    @Test
+    void testSubMap() {
+        var sub = map.subMap(15, 50);
+
+        assertEquals(List.of(20, 30, 40), new ArrayList<>(sub.keySet()));
+        assertEquals(3, sub.size());
+        assertEquals(20, sub.firstKey());
+        assertEquals(40, sub.lastKey());
+        assertEquals("30", sub.get(30));
+        assertNull(sub.get(60));
+        assertFalse(sub.containsKey(50));
+        assertThrows(IllegalArgumentException.class, () -> sub.put(60, "60"));
+    }
+
+    @Test
+    void testHeadAndTailMap() {
+        assertEquals(List.of(0, 10, 20), new ArrayList<>(map.headMap(30).keySet()));
+        assertEquals(List.of(80, 90), new ArrayList<>(map.tailMap(75).keySet()));
+        assertTrue(map.tailMap(100).isEmpty());
+        assertEquals(90, map.sortedView().lastKey());
+    }
+
+    @Test
+    void testViewReflectsChanges() {
+        var tail = map.tailMap(50);
+
+        map.put(55, "55");
+        map.remove(60);
+        tail.put(95, "95");
+
+        assertEquals(List.of(50, 55, 70, 80, 90, 95), new ArrayList<>(tail.keySet()));
+        assertEquals("95", map.get(95));
+
+        var it = tail.keySet().iterator();
+        it.next();
+        it.remove();
+        assertFalse(map.containsKey(50));
+        assertEquals(10, map.size());
+    }
+
+    @Test
+    void testClear() {
+        map.clear();
+
+        assertTrue(map.sortedView().isEmpty());
+        map.put(1, "1");
+        assertEquals(List.of(1), new ArrayList<>(map.sortedView().keySet()));
+    }
+
+    @Test
+    void testMatchesTreeMap() {
+        var reference = new TreeMap<Integer, String>(map.sortedView());
+        var random = ThreadLocalRandom.current();
+        for (int i = 0; i < 5000; ++i) {
+            int key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                map.put(key, String.valueOf(i));
+                reference.put(key, String.valueOf(i));
+            } else {
+                assertEquals(reference.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        assertEquals(new ArrayList<>(reference.entrySet()), new ArrayList<>(map.sortedView().entrySet()));
+        assertEquals(new ArrayList<>(reference.subMap(100, 300).keySet()),
+                new ArrayList<>(map.subMap(100, 300).keySet()));
+    }
+}
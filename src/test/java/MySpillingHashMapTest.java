@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySpillingHashMapTest {
+
+    @TempDir
+    Path dir;
+
+    private MySpillingHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        map = new MySpillingHashMap<>(dir, MyHashMapCodec.INTEGER, MyHashMapCodec.STRING, 1000, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        map.close();
+    }
+
+    private long fileCount() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testSpillsOverBudget() throws IOException {
+        for (int i = 0; i < 5000; ++i)
+            map.put(i, "v" + i);
+
+        assertEquals(5000, map.size());
+        assertTrue(map.spilledPartitionCount() > 0);
+        assertEquals(map.spilledPartitionCount(), fileCount());
+        for (int i = 0; i < 5000; ++i)
+            assertEquals("v" + i, map.get(i));
+        assertFalse(map.containsKey(5000));
+        assertNull(map.get(-1));
+    }
+
+    @Test
+    void testUpdateAndRemoveInSpilledPartition() {
+        for (int i = 0; i < 5000; ++i)
+            map.put(i, "v" + i);
+
+        for (int i = 0; i < 5000; i += 7)
+            assertEquals("v" + i, map.remove(i));
+        map.put(14, "new");
+        map.put(null, null);
+
+        assertTrue(map.containsKey(null));
+        assertEquals("new", map.get(14));
+        assertNull(map.get(7));
+        assertEquals(5000 - 715 + 2, map.size());
+        assertNull(map.remove(7));
+    }
+
+    @Test
+    void testClearDeletesFiles() throws IOException {
+        for (int i = 0; i < 5000; ++i)
+            map.put(i, "v" + i);
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.spilledPartitionCount());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void testBufferDataInput() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeByte(0xFF);
+        out.writeInt(42);
+        out.writeLong(-7L);
+        out.writeUTF("ключ");
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+
+        var in = new MySpillingHashMap.BufferDataInput().reset(buf, 1);
+        assertEquals(42, in.readInt());
+        assertEquals(-7L, in.readLong());
+        assertEquals("ключ", in.readUTF());
+        assertThrows(EOFException.class, in::readByte);
+        assertEquals(0, buf.position());
+        assertEquals(255, in.reset(buf, 0).readUnsignedByte());
+    }
+
+    @Test
+    void testBufferDataInputReadLine() {
+        ByteBuffer buf = ByteBuffer.wrap("one\ntwo\r\nthree\rfour".getBytes(StandardCharsets.ISO_8859_1));
+        var in = new MySpillingHashMap.BufferDataInput().reset(buf, 0);
+
+        assertEquals("one", in.readLine());
+        assertEquals("two", in.readLine());
+        assertEquals("three", in.readLine());
+        assertEquals("four", in.readLine());
+        assertNull(in.readLine());
+    }
+}
@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySwissHashMapTest {
+
+    private MySwissHashMap<Integer, String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new MySwissHashMap<>();
+
+        map.put(1, "1");
+        map.put(null, "null");
+        map.put(17, null);
+    }
+
+    @Test
+    void testPutAndGet() {
+        assertEquals(3, map.size());
+        assertEquals("1", map.get(1));
+        assertEquals("null", map.get(null));
+        assertNull(map.get(17));
+        assertTrue(map.containsKey(17));
+        assertFalse(map.containsKey(2));
+        assertEquals("1", map.put(1, "one"));
+        assertEquals("one", map.get(1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void testMatchByte() {
+        long w = 0x80FE_0012_3400_1280L;
+
+        assertEquals(0x0000_0000_0000_8000L, MySwissHashMap.matchByte(w, 0x12) & 0xFFFFL);
+        assertEquals(0L, MySwissHashMap.matchByte(w, 0x7F));
+        assertEquals(0x8000_0000_0000_0080L, MySwissHashMap.matchEmpty(w));
+        assertEquals(0x8080_0000_0000_0080L, MySwissHashMap.matchFree(w));
+    }
+
+    @Test
+    void testRemoveAndReuseSlots() {
+        assertEquals("1", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertEquals(2, map.size());
+        map.put(1, "again");
+        assertEquals("again", map.get(1));
+    }
+
+    @Test
+    void testCapacityIsKeptBelowSevenEighths() {
+        MySwissHashMap<Integer, Integer> m = new MySwissHashMap<>(1000);
+        int capacity = MySwissHashMap.capacityFor(1000);
+        for (int i = 0; i < 1000; ++i)
+            m.put(i, i);
+
+        assertEquals(capacity, m.getCtrl().length);
+        for (int i = 0; i < 100_000; ++i)
+            m.put(i, i);
+
+        assertEquals(100_000, m.size());
+        assertTrue(m.size() <= m.getCtrl().length - (m.getCtrl().length >>> 3));
+        for (int i = 0; i < 100_000; ++i)
+            assertEquals(i, m.get(i));
+        assertNull(m.get(-1));
+    }
+
+    @Test
+    void testChurnDoesNotGrowTable() {
+        MySwissHashMap<Integer, Integer> m = new MySwissHashMap<>(64);
+        for (int i = 0; i < 100_000; ++i) {
+            m.put(i, i);
+            if (i >= 32)
+                m.remove(i - 32);
+        }
+
+        assertEquals(32, m.size());
+        assertEquals(MySwissHashMap.capacityFor(64), m.getCtrl().length);
+    }
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        MySwissHashMap<Integer, Integer> m = new MySwissHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; ++i) {
+            int key = random.nextInt(5000);
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, i), m.put(key, i));
+                case 1 -> assertEquals(expected.remove(key), m.remove(key));
+                default -> assertEquals(expected.get(key), m.get(key));
+            }
+        }
+
+        assertEquals(expected, m);
+        assertEquals(m, expected);
+    }
+
+    @Test
+    void testIteratorRemove() {
+        for (int i = 0; i < 100; ++i)
+            map.put(i, String.valueOf(i));
+        Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Integer key = it.next().getKey();
+            if (key != null && key % 2 == 0)
+                it.remove();
+        }
+
+        assertEquals(51, map.size());
+        assertFalse(map.containsKey(50));
+        assertEquals("51", map.get(51));
+        assertThrows(IllegalStateException.class, map.entrySet().iterator()::remove);
+    }
+
+    @Test
+    void testClear() {
+        int capacity = map.getCtrl().length;
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertEquals(capacity, map.getCtrl().length);
+        map.put(2, "2");
+        assertEquals("2", map.get(2));
+    }
+
+    @Test
+    void testCapacityIsCapped() {
+        int max = MySwissHashMap.MAXIMUM_CAPACITY, full = max - (max >>> 3);
+
+        assertEquals(max, MySwissHashMap.capacityFor(full));
+        assertEquals(max, MySwissHashMap.growCapacity(max >>> 1, max >>> 1));
+        assertEquals(max, MySwissHashMap.growCapacity(full - 1, max));
+        assertThrows(IllegalStateException.class, () -> MySwissHashMap.growCapacity(full, max));
+        assertDoesNotThrow(() -> new MySwissHashMap<Integer, Integer>(Integer.MAX_VALUE));
+    }
+}